@@ -0,0 +1,37 @@
+/*=============================================================================#
+ # Copyright (c) 2016 Stephan Wahlbrink (WalWare.de) and others.
+ # All rights reserved. This program and the accompanying materials
+ # are made available under the terms of the Eclipse Public License v1.0
+ # which accompanies this distribution, and is available at
+ # http://www.eclipse.org/legal/epl-v10.html
+ # 
+ # Contributors:
+ #     Stephan Wahlbrink - initial API and implementation
+ #=============================================================================*/
+
+package de.walware.ecommons.ltk;
+
+import java.util.List;
+
+
+/**
+ * Extension of {@link IElementChangedListener} receiving the events of multiple changed
+ * elements in one notification.
+ * <p>
+ * Model managers supporting batched delivery call {@link #elementsChanged(List)} instead of
+ * {@link #elementChanged(ElementChangedEvent)}.</p>
+ * <p>
+ * This interface may be implemented by clients.</p>
+ */
+public interface IElementChangedListenerExt extends IElementChangedListener {
+	
+	
+	/**
+	 * Notifies that multiple elements have changed.
+	 * The events are in the order of the changes and all belong to the same working context.
+	 * 
+	 * @param events the change events
+	 */
+	public void elementsChanged(List<ElementChangedEvent> events);
+	
+}
@@ -0,0 +1,53 @@
+/*=============================================================================#
+ # Copyright (c) 2016 Stephan Wahlbrink (WalWare.de) and others.
+ # All rights reserved. This program and the accompanying materials
+ # are made available under the terms of the Eclipse Public License v1.0
+ # which accompanies this distribution, and is available at
+ # http://www.eclipse.org/legal/epl-v10.html
+ # 
+ # Contributors:
+ #     Stephan Wahlbrink - initial API and implementation
+ #=============================================================================*/
+
+package de.walware.ecommons.ltk;
+
+
+/**
+ * Statistics of the shared source units of a model type in a working context.
+ * 
+ * @see ISourceUnitManager#getCacheStatistics(String, WorkingContext)
+ */
+public interface ISourceUnitCacheStatistics {
+	
+	
+	/**
+	 * Returns the number of requests answered by an existing source unit.
+	 */
+	long getHitCount();
+	
+	/**
+	 * Returns the number of requests which did not find an existing source unit.
+	 */
+	long getMissCount();
+	
+	/**
+	 * Returns the number of source units released by the retention policy.
+	 */
+	long getEvictionCount();
+	
+	/**
+	 * Returns the number of source units cleared by the garbage collector.
+	 */
+	long getCollectedCount();
+	
+	/**
+	 * Returns the current number of source units strongly retained by the retention policy.
+	 */
+	int getRetainedCount();
+	
+	/**
+	 * Returns the current number of registered source units.
+	 */
+	int getSize();
+	
+}
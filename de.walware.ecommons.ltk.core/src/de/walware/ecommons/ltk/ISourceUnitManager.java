@@ -51,4 +51,14 @@ public interface ISourceUnitManager {
 	List<ISourceUnit> getOpenSourceUnits(List<String> modelTypeIds, WorkingContext context,
 			Object from);
 	
+	/**
+	 * Returns a snapshot of the statistics of the shared source units in the given LTK model and
+	 * working context.
+	 * 
+	 * @param modelTypeId the model type id
+	 * @param context the working context
+	 * @return the statistics or <code>null</code>, if no source units were requested yet
+	 */
+	ISourceUnitCacheStatistics getCacheStatistics(String modelTypeId, WorkingContext context);
+	
 }
@@ -41,22 +41,115 @@ public class AstSelection {
 	private IAstNode fAfterChild;
 	
 	
-	private class CoveringGreaterFinder implements ICommonAstVisitor {
+	private abstract class Finder implements ICommonAstVisitor {
 		
-		private int fInCovering = SEARCH_STATE_BEFORE;
+		protected int fInCovering = SEARCH_STATE_BEFORE;
+		
+		/**
+		 * Returns if the node is covering the selected range in the mode of the finder.
+		 * A covering node is always touching the range.
+		 */
+		protected abstract boolean isCovering(IAstNode node);
+		
+		/**
+		 * Visits the children of the covering node (state {@link #SEARCH_STATE_MATCH}).
+		 */
+		protected final void visitChildren(final IAstNode node) throws InvocationTargetException {
+			if (node instanceof ISortedChildrenAstNode) {
+				searchChildren(node);
+			}
+			else {
+				node.acceptInChildren(this);
+			}
+		}
+		
+		/**
+		 * Equivalent of {@link IAstNode#acceptInChildren(ICommonAstVisitor)} for nodes with
+		 * sorted children using binary search.
+		 */
+		private void searchChildren(final IAstNode node) throws InvocationTargetException {
+			final int count = node.getChildCount();
+			// children ending before the range: [0, touchingStart)
+			int low = 0;
+			int high = count;
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (node.getChild(mid).getEndOffset() < fStart) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			final int touchingStart = low;
+			// children starting at or before the start of the range: [0, coveringEnd)
+			high = count;
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (node.getChild(mid).getOffset() <= fStart) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			final int coveringEnd = low;
+			// children starting after the range: [afterStart, count)
+			high = count;
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (node.getChild(mid).getOffset() <= fStop) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			final int afterStart = low;
+			
+			for (int i = touchingStart; i < coveringEnd; i++) {
+				if (isCovering(node.getChild(i))) {
+					// the children before are cleared by the covering child
+					for (; i < count && fInCovering < SEARCH_STATE_BEHIND; i++) {
+						visit(node.getChild(i));
+					}
+					return;
+				}
+			}
+			// like checkChild for all children
+			if (touchingStart > 0) {
+				fBeforeChild = node.getChild(touchingStart - 1);
+			}
+			if (touchingStart < afterStart) {
+				fFirstChild = node.getChild(touchingStart);
+				fLastChild = node.getChild(afterStart - 1);
+			}
+			if (afterStart < count) {
+				fAfterChild = node.getChild(afterStart);
+			}
+		}
+		
+	}
+	
+	private class CoveringGreaterFinder extends Finder {
+		
+		@Override
+		protected boolean isCovering(final IAstNode node) {
+			return ((node.getOffset() < fStart && fStop <= node.getEndOffset())
+					|| (node.getOffset() == fStart && fStop < node.getEndOffset()) );
+		}
 		
 		@Override
 		public void visit(final IAstNode node) throws InvocationTargetException {
 			if (fInCovering >= SEARCH_STATE_BEHIND) {
 				return;
 			}
-			if ((node.getOffset() < fStart && fStop <= node.getEndOffset())
-					|| (node.getOffset() == fStart && fStop < node.getEndOffset())) {
+			if (isCovering(node)) {
 				// covering
 				clearChilds();
 				fLastCovering = node;
 				fInCovering = SEARCH_STATE_MATCH;
-				node.acceptInChildren(this);
+				visitChildren(node);
 				fInCovering = (fStart == fStop && node.getEndOffset() == fStop) ? SEARCH_STATE_MATCHED : SEARCH_STATE_BEHIND;
 				return;
 			}
@@ -71,22 +164,25 @@ public class AstSelection {
 		
 	}
 	
-	private class CoveringSameFirstFinder implements ICommonAstVisitor {
+	private class CoveringSameFirstFinder extends Finder {
 		
-		private int fInCovering = SEARCH_STATE_BEFORE;
+		@Override
+		protected boolean isCovering(final IAstNode node) {
+			return (node.getOffset() <= fStart && fStop <= node.getEndOffset());
+		}
 		
 		@Override
 		public void visit(final IAstNode node) throws InvocationTargetException {
 			if (fInCovering >= SEARCH_STATE_BEHIND) {
 				return;
 			}
-			if (node.getOffset() <= fStart && fStop <= node.getEndOffset()) {
+			if (isCovering(node)) {
 				// covering
 				clearChilds();
 				fLastCovering = node;
 				if (node.getOffset() != fStart || fStop != node.getEndOffset()) {
 					fInCovering = SEARCH_STATE_MATCH;
-					node.acceptInChildren(this);
+					visitChildren(node);
 				}
 				fInCovering = SEARCH_STATE_BEHIND;
 				return;
@@ -99,21 +195,24 @@ public class AstSelection {
 		
 	}
 	
-	private class CoveringSameLastFinder implements ICommonAstVisitor {
+	private class CoveringSameLastFinder extends Finder {
 		
-		private int fInCovering = SEARCH_STATE_BEFORE;
+		@Override
+		protected boolean isCovering(final IAstNode node) {
+			return (node.getOffset() <= fStart && fStop <= node.getEndOffset());
+		}
 		
 		@Override
 		public void visit(final IAstNode node) throws InvocationTargetException {
 			if (fInCovering >= SEARCH_STATE_BEHIND) {
 				return;
 			}
-			if (node.getOffset() <= fStart && fStop <= node.getEndOffset()) {
+			if (isCovering(node)) {
 				// covering
 				clearChilds();
 				fLastCovering = node;
 				fInCovering = SEARCH_STATE_MATCH;
-				node.acceptInChildren(this);
+				visitChildren(node);
 				fInCovering = SEARCH_STATE_BEHIND;
 				return;
 			}
@@ -159,7 +258,7 @@ public class AstSelection {
 		final AstSelection selection = new AstSelection();
 		selection.fStart = start;
 		selection.fStop = stop;
-		ICommonAstVisitor finder;
+		Finder finder;
 		switch (mode) {
 		case MODE_COVERING_GREATER:
 			finder = selection.new CoveringGreaterFinder();
@@ -0,0 +1,31 @@
+/*=============================================================================#
+ # Copyright (c) 2016 Stephan Wahlbrink (WalWare.de) and others.
+ # All rights reserved. This program and the accompanying materials
+ # are made available under the terms of the Eclipse Public License v1.0
+ # which accompanies this distribution, and is available at
+ # http://www.eclipse.org/legal/epl-v10.html
+ # 
+ # Contributors:
+ #     Stephan Wahlbrink - initial API and implementation
+ #=============================================================================*/
+
+package de.walware.ecommons.ltk.ast;
+
+
+/**
+ * AST node with children in source order, allowing direct access to them by offset.
+ * <p>
+ * An implementation guarantees that:</p>
+ * <ul>
+ *   <li>{@link #acceptInChildren(ICommonAstVisitor)} visits exactly the children
+ *     {@link #getChild(int) getChild}(0) .. getChild({@link #getChildCount()} - 1) in this
+ *     order,</li>
+ *   <li>the offsets and the end offsets of the children are both non-decreasing.</li>
+ * </ul>
+ * <p>
+ * Searches like {@link AstSelection} use binary search for such nodes instead of visiting all
+ * children.</p>
+ */
+public interface ISortedChildrenAstNode extends IAstNode {
+	
+}
@@ -14,15 +14,17 @@ package de.walware.ecommons.ltk.core;
 import java.nio.channels.IllegalSelectorException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 
 import de.walware.jcommons.collections.ImCollections;
 import de.walware.jcommons.collections.ImList;
@@ -235,6 +237,14 @@ public class ElementSet {
 	}
 	
 	
+	/**
+	 * Removes the resources and model elements which have an ancestor in this set.
+	 * <p>
+	 * The candidates for the ancestors are looked up by the parent paths of the resources and
+	 * the source parents of the elements; whether an element is removed is decided by the
+	 * <code>isDescendantOf</code> methods for the candidates. Overriding implementations of these
+	 * methods can restrict the relation, but must not extend it beyond these candidates.</p>
+	 */
 	public void removeElementsWithAncestorsOnList() {
 		if ((this.processState & 0x10) == 0) {
 			removeResourcesDescendantsOfResources();
@@ -245,42 +255,110 @@ public class ElementSet {
 	}
 	
 	private void removeResourcesDescendantsOfResources() {
-		final Iterator<IResource> iter= this.resources.iterator();
-		ITER_RESOURCE : while (iter.hasNext()) {
-			final IResource subResource= iter.next();
-			for (final IResource superResource : this.resources) {
-				if (isDescendantOf(subResource, superResource)) {
-					iter.remove();
-					continue ITER_RESOURCE;
+		if (this.resources.size() <= 1) {
+			return;
+		}
+		final Map<IPath, List<IResource>> superResources= new HashMap<>(this.resources.size());
+		for (final IResource superResource : this.resources) {
+			addCandidate(superResources, superResource.getFullPath(), superResource);
+		}
+		final List<IResource> kept= new ArrayList<>(this.resources.size());
+		ITER_RESOURCE : for (final IResource subResource : this.resources) {
+			IPath path= subResource.getFullPath();
+			while (path.segmentCount() > 0) {
+				path= path.removeLastSegments(1);
+				final List<IResource> candidates= superResources.get(path);
+				if (candidates != null) {
+					for (final IResource superResource : candidates) {
+						if (isDescendantOf(subResource, superResource)) {
+							continue ITER_RESOURCE;
+						}
+					}
 				}
 			}
+			kept.add(subResource);
+		}
+		if (kept.size() < this.resources.size()) {
+			this.resources.clear();
+			this.resources.addAll(kept);
 		}
 	}
 	
 	private void removeResourcesDescendantsOfModelElements() {
-		final Iterator<IResource> iter= this.resources.iterator();
-		ITER_RESOURCE : while (iter.hasNext()) {
-			final IResource subResource= iter.next();
-			for (final IModelElement superElement : this.modelElements) {
-				if (isDescendantOf(subResource, superElement)) {
-					iter.remove();
-					continue ITER_RESOURCE;
+		if (this.resources.isEmpty() || this.modelElements.isEmpty()) {
+			return;
+		}
+		final Map<IPath, List<IModelElement>> superElements= new HashMap<>(this.modelElements.size());
+		for (final IModelElement superElement : this.modelElements) {
+			final IResource superResource= getOwningResource(superElement);
+			if (superResource != null) {
+				addCandidate(superElements, superResource.getFullPath(), superElement);
+			}
+		}
+		if (superElements.isEmpty()) {
+			return;
+		}
+		final List<IResource> kept= new ArrayList<>(this.resources.size());
+		ITER_RESOURCE : for (final IResource subResource : this.resources) {
+			IPath path= subResource.getFullPath();
+			while (path.segmentCount() > 0) {
+				path= path.removeLastSegments(1);
+				final List<IModelElement> candidates= superElements.get(path);
+				if (candidates != null) {
+					for (final IModelElement superElement : candidates) {
+						if (isDescendantOf(subResource, superElement)) {
+							continue ITER_RESOURCE;
+						}
+					}
 				}
 			}
+			kept.add(subResource);
+		}
+		if (kept.size() < this.resources.size()) {
+			this.resources.clear();
+			this.resources.addAll(kept);
 		}
 	}
 	
 	private void removeModelElementsDescendantsOfModelElements() {
-		final Iterator<IModelElement> iter= this.modelElements.iterator();
-		ITER_ELEMENT : while (iter.hasNext()) {
-			final IModelElement subElement= iter.next();
-			for (final IModelElement superElement : this.modelElements) {
-				if (isDescendantOf(subElement, superElement)) {
-					iter.remove();
-					continue ITER_ELEMENT;
+		if (this.modelElements.size() <= 1) {
+			return;
+		}
+		final Map<IModelElement, List<IModelElement>> superElements= new HashMap<>(this.modelElements.size());
+		for (final IModelElement superElement : this.modelElements) {
+			addCandidate(superElements, superElement, superElement);
+		}
+		final List<IModelElement> kept= new ArrayList<>(this.modelElements.size());
+		ITER_ELEMENT : for (final IModelElement subElement : this.modelElements) {
+			if (subElement instanceof ISourceStructElement) {
+				ISourceStructElement parent= ((ISourceStructElement) subElement).getSourceParent();
+				while (parent != null) {
+					final List<IModelElement> candidates= superElements.get(parent);
+					if (candidates != null) {
+						for (final IModelElement superElement : candidates) {
+							if (isDescendantOf(subElement, superElement)) {
+								continue ITER_ELEMENT;
+							}
+						}
+					}
+					parent= parent.getSourceParent();
 				}
 			}
+			kept.add(subElement);
+		}
+		if (kept.size() < this.modelElements.size()) {
+			this.modelElements.clear();
+			this.modelElements.addAll(kept);
+		}
+	}
+	
+	private static <K, V> void addCandidate(final Map<K, List<V>> map, final K key, final V value) {
+		List<V> list= map.get(key);
+		if (list == null) {
+			list= new ArrayList<>(1);
+			map.put(key, list);
 		}
+		list.add(value);
 	}
 	
 	public boolean includes(final IModelElement element) {
@@ -13,6 +13,7 @@ package de.walware.ecommons.ltk.core;
 
 import de.walware.ecommons.text.LineInformationCreator;
 import de.walware.ecommons.text.core.ILineInformation;
+import de.walware.ecommons.text.core.LineInformation;
 
 
 /**
@@ -21,7 +22,12 @@ import de.walware.ecommons.text.core.ILineInformation;
 public class SourceContent {
 	
 	
-	private static final LineInformationCreator LINES_CREATOR= new LineInformationCreator();
+	private static final ThreadLocal<LineInformationCreator> LINES_CREATORS= new ThreadLocal<LineInformationCreator>() {
+		@Override
+		protected LineInformationCreator initialValue() {
+			return new LineInformationCreator();
+		}
+	};
 	
 	
 	private final long stamp;
@@ -30,6 +36,12 @@ public class SourceContent {
 	
 	private final int offset;
 	private volatile ILineInformation lines;
+	private volatile int[] lineOffsets;
+	
+	private int[] baseLineOffsets;
+	private int changeOffset;
+	private int changeLength;
+	private int changeTextLength;
 	
 	
 	public SourceContent(final long stamp, final String text) {
@@ -51,6 +63,33 @@ public class SourceContent {
 		this.lines= lines;
 	}
 	
+	/**
+	 * Creates a new source content for a text which differs from the text of the base content
+	 * by a single change.
+	 * <p>
+	 * If the line information of the base content is already computed, the line information of
+	 * this content is updated incrementally instead of scanning the complete text.</p>
+	 * 
+	 * @param stamp the stamp of the content
+	 * @param text the text
+	 * @param offset the offset of begin of the text in complete source
+	 * @param base the previous content
+	 * @param changeOffset offset of the change in the text
+	 * @param changeLength length of the replaced text in the text of the base content
+	 * @param changeTextLength length of the new text
+	 */
+	public SourceContent(final long stamp, final String text, final int offset,
+			final SourceContent base,
+			final int changeOffset, final int changeLength, final int changeTextLength) {
+		this(stamp, text, offset, null);
+		if (base != null) {
+			this.baseLineOffsets= base.lineOffsets;
+			this.changeOffset= changeOffset;
+			this.changeLength= changeLength;
+			this.changeTextLength= changeTextLength;
+		}
+	}
+	
 	
 	public final long getStamp() {
 		return this.stamp;
@@ -79,14 +118,20 @@ public class SourceContent {
 	}
 	
 	public final ILineInformation getLines() {
-		if (this.lines == null) {
-			synchronized (LINES_CREATOR) {
-				if (this.lines == null) {
-					this.lines= LINES_CREATOR.create(this.text);
-				}
-			}
+		ILineInformation lines= this.lines;
+		if (lines == null) {
+			final LineInformationCreator creator= LINES_CREATORS.get();
+			final int[] baseLineOffsets= this.baseLineOffsets;
+			final int[] lineOffsets= (baseLineOffsets != null) ?
+					creator.updateLineOffsets(this.text, baseLineOffsets,
+							this.changeOffset, this.changeLength, this.changeTextLength ) :
+					creator.createLineOffsets(this.text);
+			lines= new LineInformation(lineOffsets, this.text.length());
+			this.lineOffsets= lineOffsets;
+			this.lines= lines;
+			this.baseLineOffsets= null;
 		}
-		return this.lines;
+		return lines;
 	}
 	
 	
@@ -11,8 +11,11 @@
 
 package de.walware.ecommons.ltk.core.impl;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.ISafeRunnable;
@@ -23,13 +26,16 @@ import org.eclipse.core.runtime.jobs.Job;
 
 import de.walware.ecommons.ltk.ElementChangedEvent;
 import de.walware.ecommons.ltk.IElementChangedListener;
+import de.walware.ecommons.ltk.IElementChangedListenerExt;
 import de.walware.ecommons.ltk.IModelElementDelta;
 import de.walware.ecommons.ltk.LTK;
 import de.walware.ecommons.ltk.LTKUtil;
 import de.walware.ecommons.ltk.WorkingContext;
 import de.walware.ecommons.ltk.core.model.IModelElement;
+import de.walware.ecommons.ltk.core.model.INameAccessSet;
 import de.walware.ecommons.ltk.core.model.ISourceUnit;
 import de.walware.ecommons.ltk.core.model.ISourceUnitModelInfo;
+import de.walware.ecommons.ltk.core.model.IWorkspaceSourceUnit;
 import de.walware.ecommons.ltk.internal.core.LTKCorePlugin;
 
 
@@ -41,16 +47,22 @@ public abstract class AbstractModelEventJob<ElementType extends IModelElement, I
 	
 	private static class SafeRunnable implements ISafeRunnable {
 		
-		final ElementChangedEvent fEvent;
+		final List<ElementChangedEvent> fEvents;
+		ElementChangedEvent fEvent;
 		IElementChangedListener fListener;
 		
-		public SafeRunnable(final ElementChangedEvent event) {
-			fEvent = event;
+		public SafeRunnable(final List<ElementChangedEvent> events) {
+			fEvents = events;
 		}
 		
 		@Override
 		public void run() {
-			fListener.elementChanged(fEvent);
+			if (fEvent != null) {
+				fListener.elementChanged(fEvent);
+			}
+			else {
+				((IElementChangedListenerExt) fListener).elementsChanged(fEvents);
+			}
 		}
 		
 		@Override
@@ -86,9 +98,13 @@ public abstract class AbstractModelEventJob<ElementType extends IModelElement, I
 		}
 		
 		
-		void run() {
+		ElementChangedEvent createEvent() {
 			final IModelElementDelta delta = createDelta(this);
-			fireDelta(delta);
+			final ISourceUnit su = LTKUtil.getSourceUnit(delta.getModelElement());
+			if (su == null) {
+				return null;
+			}
+			return new ElementChangedEvent(delta, su.getWorkingContext());
 		}
 	}
 	
@@ -96,12 +112,17 @@ public abstract class AbstractModelEventJob<ElementType extends IModelElement, I
 	private final AbstractModelManager fModelManager;
 	
 	private final Object fTasksLock = new Object();
-	private final LinkedList<IModelElement> fTaskQueue = new LinkedList<>();
-	private final HashMap<IModelElement, Task> fTaskDetail = new HashMap<>();
+	/** Pending tasks in order of their last update */
+	private final LinkedHashMap<IModelElement, Task> fTasks = new LinkedHashMap<>();
 	
 	private boolean fWorking = false;
 	private boolean fStop = false;
 	
+	private int fMaxBatchSize = 1;
+	private long fBatchLatency = 0;
+	
+	private volatile WorkspaceNameIndex fNameIndex;
+	
 	
 	public AbstractModelEventJob(final AbstractModelManager manager) {
 		super("Model Events for " + manager.getModelTypeId()); //$NON-NLS-1$
@@ -113,23 +134,89 @@ public abstract class AbstractModelEventJob<ElementType extends IModelElement, I
 	}
 	
 	
+	/**
+	 * Configures the batched delivery of the events.
+	 * <p>
+	 * Up to <code>maxSize</code> events are delivered together to listeners implementing
+	 * {@link IElementChangedListenerExt}. The delivery of new updates is delayed by
+	 * <code>latency</code> to collect multiple updates.</p>
+	 * <p>
+	 * By default each event is delivered separately without delay.</p>
+	 * 
+	 * @param maxSize the maximum number of events per notification
+	 * @param latency the delay in milliseconds
+	 */
+	public void setBatchDelivery(final int maxSize, final long latency) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize: " + maxSize); //$NON-NLS-1$
+		}
+		if (latency < 0) {
+			throw new IllegalArgumentException("latency: " + latency); //$NON-NLS-1$
+		}
+		synchronized (fTasksLock) {
+			fMaxBatchSize = maxSize;
+			fBatchLatency = latency;
+		}
+	}
+	
+	
+	/**
+	 * Sets the name index to update with the name accesses of the source units.
+	 * <p>
+	 * The index is updated in this job for all source units with a key
+	 * ({@link #getNameIndexKey(ISourceUnit)}), using the name accesses provided by
+	 * {@link #getNameAccessSet(ISourceUnitModelInfo)}.</p>
+	 * 
+	 * @param index the index or <code>null</code>
+	 */
+	public void setNameIndex(final WorkspaceNameIndex index) {
+		fNameIndex = index;
+	}
+	
+	public WorkspaceNameIndex getNameIndex() {
+		return fNameIndex;
+	}
+	
+	/**
+	 * Returns the key of the source unit in the name index.
+	 * <p>
+	 * By default the path of the resource for source units in the
+	 * {@link LTK#PERSISTENCE_CONTEXT persistence context}, otherwise <code>null</code>.</p>
+	 * 
+	 * @param su the source unit
+	 * @return the key or <code>null</code> if the source unit is not indexed
+	 */
+	protected String getNameIndexKey(final ISourceUnit su) {
+		if (su.getWorkingContext() == LTK.PERSISTENCE_CONTEXT && su instanceof IWorkspaceSourceUnit) {
+			return ((IWorkspaceSourceUnit) su).getResource().getFullPath().toPortableString();
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the name accesses of the model to add to the name index.
+	 * 
+	 * @param modelInfo the model info
+	 * @return the name accesses or <code>null</code> if not available
+	 */
+	protected INameAccessSet<?> getNameAccessSet(final InfoType modelInfo) {
+		return null;
+	}
+	
+	
 	public void addUpdate(final ElementType element,
 			final InfoType oldModel, final InfoType newModel) {
 		synchronized (fTasksLock) {
-			Task task = fTaskDetail.get(element);
+			Task task = fTasks.remove(element);
 			if (task == null) {
 				task = new Task(element);
 				task.fOldInfo = oldModel;
-				fTaskDetail.put(element, task);
-			}
-			else {
-				fTaskQueue.remove(element);
 			}
 			task.fNewInfo = newModel;
-			fTaskQueue.add(element);
+			fTasks.put(element, task);
 			
 			if (!fWorking) {
-				schedule();
+				schedule(fBatchLatency);
 			}
 		}
 	}
@@ -140,47 +227,109 @@ public abstract class AbstractModelEventJob<ElementType extends IModelElement, I
 	@Override
 	protected IStatus run(final IProgressMonitor monitor) {
 		while (true) {
-			Task task;
+			final List<Task> tasks;
 			synchronized (fTasksLock) {
-				final IModelElement element = (!fTaskQueue.isEmpty()) ? fTaskQueue.removeFirst() : null;
-				if (element == null || fStop) {
+				if (fTasks.isEmpty() || fStop) {
 					fWorking = false;
 					return Status.OK_STATUS;
 				}
 				fWorking = true;
-				task = fTaskDetail.remove(element);
+				final int count = Math.min(fTasks.size(), fMaxBatchSize);
+				tasks = new ArrayList<>(count);
+				final Iterator<Task> iter = fTasks.values().iterator();
+				for (int i = 0; i < count; i++) {
+					tasks.add(iter.next());
+					iter.remove();
+				}
 			}
-			try {
-				task.run();
+			final WorkspaceNameIndex nameIndex = fNameIndex;
+			final List<ElementChangedEvent> events = new ArrayList<>(tasks.size());
+			for (final Task task : tasks) {
+				try {
+					final ElementChangedEvent event = task.createEvent();
+					if (event != null) {
+						events.add(event);
+					}
+				}
+				catch (final Throwable e) {
+					LTKCorePlugin.log(new Status(IStatus.ERROR, LTK.PLUGIN_ID, -1,
+							"An error occurred when firing model event for " + fModelManager.getModelTypeId() + ".", //$NON-NLS-1$
+							e ));
+				}
 			}
-			catch (final Throwable e) {
-				LTKCorePlugin.log(new Status(IStatus.ERROR, LTK.PLUGIN_ID, -1,
-						"An error occurred when firing model event for " + fModelManager.getModelTypeId() + ".", //$NON-NLS-1$
-						e ));
+			fireEvents(events);
+			
+			// after the events, so a failure of the index doesn't affect the listeners
+			if (nameIndex != null) {
+				for (final Task task : tasks) {
+					try {
+						updateNameIndex(nameIndex, task);
+					}
+					catch (final Throwable e) {
+						LTKCorePlugin.log(new Status(IStatus.ERROR, LTK.PLUGIN_ID, -1,
+								"An error occurred when updating the name index for " + fModelManager.getModelTypeId() + ".", //$NON-NLS-1$
+								e ));
+					}
+				}
 			}
 		}
 	}
 	
+	private void updateNameIndex(final WorkspaceNameIndex nameIndex, final Task task) {
+		final ISourceUnit su = LTKUtil.getSourceUnit(task.fElement);
+		if (su == null) {
+			return;
+		}
+		final String key = getNameIndexKey(su);
+		if (key == null) {
+			return;
+		}
+		final InfoType newInfo = task.fNewInfo;
+		if (newInfo == null) {
+			nameIndex.remove(key);
+			return;
+		}
+		final INameAccessSet<?> nameAccessSet = getNameAccessSet(newInfo);
+		if (nameAccessSet != null) {
+			nameIndex.update(key, newInfo.getStamp().getSourceStamp(), nameAccessSet);
+		}
+	}
+	
 	protected void dispose() {
 		synchronized (fTasksLock) {
 			fStop = true;
-			fTaskQueue.clear();
-			fTaskDetail.clear();
+			fTasks.clear();
 		}
 	}
 	
-	private void fireDelta(final IModelElementDelta delta) {
-		final ISourceUnit su = LTKUtil.getSourceUnit(delta.getModelElement());
-		if (su == null) {
-			return;
-		}
-		final WorkingContext context = su.getWorkingContext();
-		final ElementChangedEvent event = new ElementChangedEvent(delta, context);
-		final SafeRunnable runnable = new SafeRunnable(event);
-		final IElementChangedListener[] listeners = fModelManager.getElementChangedListeners(context);
-		for (int i = 0; i < listeners.length; i++) {
-			runnable.fListener = listeners[i];
-			SafeRunner.run(runnable);
+	private void fireEvents(final List<ElementChangedEvent> events) {
+		int start = 0;
+		while (start < events.size()) {
+			// events of the same working context
+			final WorkingContext context = events.get(start).context;
+			int end = start + 1;
+			while (end < events.size() && events.get(end).context == context) {
+				end++;
+			}
+			final List<ElementChangedEvent> contextEvents = (end - start == 1) ?
+					Collections.singletonList(events.get(start)) :
+					Collections.unmodifiableList(events.subList(start, end));
+			final SafeRunnable runnable = new SafeRunnable(contextEvents);
+			final IElementChangedListener[] listeners = fModelManager.getElementChangedListeners(context);
+			for (int i = 0; i < listeners.length; i++) {
+				runnable.fListener = listeners[i];
+				if (listeners[i] instanceof IElementChangedListenerExt) {
+					runnable.fEvent = null;
+					SafeRunner.run(runnable);
+				}
+				else {
+					for (final ElementChangedEvent event : contextEvents) {
+						runnable.fEvent = event;
+						SafeRunner.run(runnable);
+					}
+				}
+			}
+			start = end;
 		}
 	}
 	
@@ -11,12 +11,32 @@
 
 package de.walware.ecommons.ltk.core.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 
 import de.walware.ecommons.FastList;
 
@@ -24,7 +44,11 @@ import de.walware.ecommons.ltk.IElementChangedListener;
 import de.walware.ecommons.ltk.IModelManager;
 import de.walware.ecommons.ltk.LTK;
 import de.walware.ecommons.ltk.WorkingContext;
+import de.walware.ecommons.ltk.core.SourceContent;
 import de.walware.ecommons.ltk.core.model.ISourceUnit;
+import de.walware.ecommons.ltk.core.model.ISourceUnitModelInfo;
+import de.walware.ecommons.ltk.core.model.IWorkspaceSourceUnit;
+import de.walware.ecommons.ltk.internal.core.LTKCorePlugin;
 
 
 public abstract class AbstractModelManager implements IModelManager {
@@ -59,10 +83,14 @@ public abstract class AbstractModelManager implements IModelManager {
 	private class RefreshJob extends Job {
 		
 		
-		private final List<ISourceUnit> list;
+		private final ConcurrentLinkedQueue<ISourceUnit> queue;
+		private final int count;
 		
 		private final int flags;
 		
+		private final AtomicInteger workersWork= new AtomicInteger();
+		private volatile boolean canceled;
+		
 		
 		public RefreshJob(final WorkingContext context, final int flags) {
 			super("Model Refresh"); //$NON-NLS-1$
@@ -70,18 +98,162 @@ public abstract class AbstractModelManager implements IModelManager {
 			setSystem(true);
 			setPriority(DECORATE);
 			
-			this.list= LTK.getSourceUnitManager().getOpenSourceUnits(AbstractModelManager.this.typeId, context);
+			final List<ISourceUnit> list= getRefreshUnits(context);
+			this.queue= new ConcurrentLinkedQueue<>(list);
+			this.count= list.size();
 			this.flags= flags;
 		}
 		
 		@Override
 		protected IStatus run(final IProgressMonitor monitor) {
-			for (final ISourceUnit su : this.list) {
-				su.getModelInfo(null, this.flags, monitor);
+			final SubMonitor progress= SubMonitor.convert(monitor, this.count);
+			
+			final int workerCount= Math.min(getRefreshParallelism(), this.count) - 1;
+			final CountDownLatch workersDone= new CountDownLatch(Math.max(workerCount, 0));
+			final List<RefreshWorker> workers= new ArrayList<>(Math.max(workerCount, 0));
+			for (int i= 0; i < workerCount; i++) {
+				final RefreshWorker worker= new RefreshWorker(this, workersDone);
+				workers.add(worker);
+				worker.schedule();
+			}
+			
+			int workersReported= 0;
+			ISourceUnit su;
+			while (!progress.isCanceled() && (su= this.queue.poll()) != null) {
+				refresh(su, progress.newChild(1));
+				
+				final int workersWork= this.workersWork.get();
+				progress.worked(workersWork - workersReported);
+				workersReported= workersWork;
+			}
+			
+			try {
+				while (!workersDone.await(100, TimeUnit.MILLISECONDS)) {
+					if (progress.isCanceled()) {
+						cancelWorkers(workers);
+					}
+					final int workersWork= this.workersWork.get();
+					progress.worked(workersWork - workersReported);
+					workersReported= workersWork;
+				}
+			}
+			catch (final InterruptedException e) {
+				cancelWorkers(workers);
+				Thread.currentThread().interrupt();
+			}
+			
+			if (progress.isCanceled()) {
+				cancelWorkers(workers);
+				return Status.CANCEL_STATUS;
 			}
 			return Status.OK_STATUS;
 		}
 		
+		private void cancelWorkers(final List<RefreshWorker> workers) {
+			this.canceled= true;
+			for (final RefreshWorker worker : workers) {
+				worker.cancel();
+			}
+		}
+		
+		private void refresh(final ISourceUnit su, final IProgressMonitor monitor) {
+			try {
+				su.getModelInfo(null, this.flags, monitor);
+			}
+			catch (final OperationCanceledException e) {
+			}
+			catch (final Exception e) {
+				LTKCorePlugin.log(new Status(IStatus.ERROR, LTK.PLUGIN_ID, -1,
+						"An error occurred when refreshing the model of " + su.getId() + ".", //$NON-NLS-1$
+						e ));
+			}
+		}
+		
+	}
+	
+	private class RefreshWorker extends Job {
+		
+		
+		private final RefreshJob refreshJob;
+		
+		
+		public RefreshWorker(final RefreshJob refreshJob, final CountDownLatch done) {
+			super("Model Refresh"); //$NON-NLS-1$
+			setUser(false);
+			setSystem(true);
+			setPriority(DECORATE);
+			
+			this.refreshJob= refreshJob;
+			
+			addJobChangeListener(new JobChangeAdapter() {
+				@Override
+				public void done(final IJobChangeEvent event) {
+					done.countDown();
+				}
+			});
+		}
+		
+		@Override
+		public boolean belongsTo(final Object family) {
+			return (family == this.refreshJob);
+		}
+		
+		@Override
+		protected IStatus run(final IProgressMonitor monitor) {
+			ISourceUnit su;
+			while (!this.refreshJob.canceled && !monitor.isCanceled()
+					&& (su= this.refreshJob.queue.poll()) != null) {
+				this.refreshJob.refresh(su, monitor);
+				this.refreshJob.workersWork.incrementAndGet();
+			}
+			return (monitor.isCanceled()) ? Status.CANCEL_STATUS : Status.OK_STATUS;
+		}
+		
+	}
+	
+	
+	/**
+	 * Removes the entries of deleted files from the model cache.
+	 */
+	private class ModelCacheCleaner implements IResourceChangeListener, IResourceDeltaVisitor {
+		
+		private final ModelFileCache cache;
+		
+		public ModelCacheCleaner(final ModelFileCache cache) {
+			this.cache= cache;
+		}
+		
+		@Override
+		public void resourceChanged(final IResourceChangeEvent event) {
+			final IResourceDelta delta= event.getDelta();
+			if (delta == null) {
+				return;
+			}
+			try {
+				delta.accept(this);
+			}
+			catch (final CoreException e) {
+				LTKCorePlugin.log(new Status(IStatus.ERROR, LTK.PLUGIN_ID, -1,
+						"An error occurred when removing model cache entries of deleted resources.", //$NON-NLS-1$
+						e ));
+			}
+		}
+		
+		@Override
+		public boolean visit(final IResourceDelta delta) {
+			final IResource resource= delta.getResource();
+			if (resource.getType() == IResource.FILE) {
+				if (delta.getKind() == IResourceDelta.REMOVED) {
+					final String key= getModelCacheKey(resource);
+					if (key != null) {
+						this.cache.remove(key);
+					}
+				}
+				return false;
+			}
+			return true;
+		}
+		
 	}
 	
 	
@@ -89,6 +261,12 @@ public abstract class AbstractModelManager implements IModelManager {
 	
 	private final FastList<ContextItem> contexts= new FastList<>(ContextItem.class, FastList.IDENTITY);
 	
+	private volatile int refreshParallelism= Runtime.getRuntime().availableProcessors();
+	
+	private volatile ModelFileCache modelCache;
+	private volatile IModelCacheSerializer<?> modelCacheSerializer;
+	private ModelCacheCleaner modelCacheCleaner;
+	
 	
 	public AbstractModelManager(final String typeId) {
 		this.typeId= typeId;
@@ -148,6 +326,190 @@ public abstract class AbstractModelManager implements IModelManager {
 		return contextItem.listeners.toArray();
 	}
 	
+	/**
+	 * Sets the maximum number of source units refreshed in parallel by {@link #refresh(WorkingContext)}.
+	 * 
+	 * @param parallelism the number of threads, by default the number of available processors
+	 */
+	public void setRefreshParallelism(final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism: " + parallelism); //$NON-NLS-1$
+		}
+		this.refreshParallelism= parallelism;
+	}
+	
+	public int getRefreshParallelism() {
+		return this.refreshParallelism;
+	}
+	
+	/**
+	 * Enables the persistent cache of the model infos of source units in the
+	 * {@link LTK#PERSISTENCE_CONTEXT persistence context}.
+	 * <p>
+	 * The cache is stored in the state location of the LTK core plug-in, separately for each
+	 * model type. The model infos must have a {@link ContentHashSourceModelStamp}.</p>
+	 * <p>
+	 * A cached model info is loaded only as the initial model info of a source unit; it is
+	 * installed without a delta or an element changed event.</p>
+	 * <p>
+	 * While the cache is enabled, the entries of files deleted or moved in the workspace are
+	 * removed from the cache (see {@link #getModelCacheKey(IResource)}). Entries of files
+	 * deleted while the cache is disabled (e.g. while the application is not running) are not
+	 * removed automatically; they are never loaded again since the key doesn't match any
+	 * resource, and can be removed by {@link ModelFileCache#clear()}.</p>
+	 * 
+	 * @param serializer the serializer for the model type or <code>null</code> to disable the cache
+	 */
+	protected void setModelCache(final IModelCacheSerializer<?> serializer) {
+		ModelFileCache cache= null;
+		if (serializer != null) {
+			final LTKCorePlugin plugin= LTKCorePlugin.getInstance();
+			if (plugin != null) {
+				final IPath location= plugin.getStateLocation().append("modelCache") //$NON-NLS-1$
+						.append(this.typeId);
+				cache= new ModelFileCache(location.toFile().toPath());
+			}
+		}
+		synchronized (this) {
+			if (this.modelCacheCleaner != null) {
+				ResourcesPlugin.getWorkspace().removeResourceChangeListener(this.modelCacheCleaner);
+				this.modelCacheCleaner= null;
+			}
+			this.modelCache= cache;
+			this.modelCacheSerializer= (cache != null) ? serializer : null;
+			if (cache != null) {
+				this.modelCacheCleaner= new ModelCacheCleaner(cache);
+				ResourcesPlugin.getWorkspace().addResourceChangeListener(this.modelCacheCleaner,
+						IResourceChangeEvent.POST_CHANGE );
+			}
+		}
+	}
+	
+	/**
+	 * Returns the persistent model cache.
+	 * 
+	 * @return the cache or <code>null</code> if disabled
+	 * @see #setModelCache(IModelCacheSerializer)
+	 */
+	public ModelFileCache getModelCache() {
+		return this.modelCache;
+	}
+	
+	/**
+	 * Returns the key of the source unit in the model cache.
+	 * 
+	 * @param su the source unit
+	 * @return the key or <code>null</code> if the source unit is not cached
+	 */
+	protected String getModelCacheKey(final ISourceUnit su) {
+		if (su.getWorkingContext() == LTK.PERSISTENCE_CONTEXT && su instanceof IWorkspaceSourceUnit) {
+			return getModelCacheKey(((IWorkspaceSourceUnit) su).getResource());
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the key of the source units of the resource in the model cache.
+	 * <p>
+	 * The key is used to remove the entries of deleted resources too.</p>
+	 * 
+	 * @param resource the resource of the source unit
+	 * @return the key or <code>null</code> if the source unit is not cached
+	 */
+	protected String getModelCacheKey(final IResource resource) {
+		return resource.getFullPath().toPortableString();
+	}
+	
+	/**
+	 * Loads the model info of the source unit of the container from the model cache.
+	 * 
+	 * @return the model info or <code>null</code> if not available
+	 */
+	ISourceUnitModelInfo loadCachedModel(final SourceUnitModelContainer<?, ?> container,
+			final IProgressMonitor monitor) {
+		final ModelFileCache cache;
+		final IModelCacheSerializer<?> serializer;
+		synchronized (this) {
+			cache= this.modelCache;
+			serializer= this.modelCacheSerializer;
+		}
+		if (cache == null) {
+			return null;
+		}
+		final ISourceUnit su= container.getSourceUnit();
+		final String key= getModelCacheKey(su);
+		if (key == null) {
+			return null;
+		}
+		final SourceContent content= container.getParseContent(monitor);
+		if (content == null) {
+			return null;
+		}
+		return cache.load(key, su, content, serializer);
+	}
+	
+	/**
+	 * Stores the model info of the source unit of the container in the model cache.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	void storeCachedModel(final SourceUnitModelContainer<?, ?> container,
+			final ISourceUnitModelInfo modelInfo) {
+		final ModelFileCache cache;
+		final IModelCacheSerializer serializer;
+		synchronized (this) {
+			cache= this.modelCache;
+			serializer= this.modelCacheSerializer;
+		}
+		if (cache == null) {
+			return;
+		}
+		final String key= getModelCacheKey(container.getSourceUnit());
+		if (key == null) {
+			return;
+		}
+		cache.store(key, modelInfo, serializer);
+	}
+	
+	/**
+	 * Returns the source units to refresh in the order to process them.
+	 * <p>
+	 * By default all open source units of the context; if the context is not the editor
+	 * context, the units with an open working copy in the editor context come first.</p>
+	 * 
+	 * @param context the working context
+	 * @return the source units
+	 */
+	protected List<ISourceUnit> getRefreshUnits(final WorkingContext context) {
+		final List<ISourceUnit> units= LTK.getSourceUnitManager().getOpenSourceUnits(this.typeId, context);
+		if (context == LTK.EDITOR_CONTEXT || units.size() <= 1) {
+			return units;
+		}
+		final List<ISourceUnit> editorUnits= LTK.getSourceUnitManager().getOpenSourceUnits(
+				this.typeId, LTK.EDITOR_CONTEXT );
+		if (editorUnits.isEmpty()) {
+			return units;
+		}
+		final Set<ISourceUnit> inEditor= Collections.newSetFromMap(new IdentityHashMap<ISourceUnit, Boolean>());
+		for (final ISourceUnit editorUnit : editorUnits) {
+			final ISourceUnit underlyingUnit= editorUnit.getUnderlyingUnit();
+			if (underlyingUnit != null) {
+				inEditor.add(underlyingUnit);
+			}
+		}
+		final List<ISourceUnit> sorted= new ArrayList<>(units.size());
+		for (final ISourceUnit su : units) {
+			if (inEditor.contains(su)) {
+				sorted.add(su);
+			}
+		}
+		for (final ISourceUnit su : units) {
+			if (!inEditor.contains(su)) {
+				sorted.add(su);
+			}
+		}
+		return sorted;
+	}
+	
 	/**
 	 * Refresh reuses existing ast
 	 */
@@ -0,0 +1,125 @@
+/*=============================================================================#
+ # Copyright (c) 2016 Stephan Wahlbrink (WalWare.de) and others.
+ # All rights reserved. This program and the accompanying materials
+ # are made available under the terms of the Eclipse Public License v1.0
+ # which accompanies this distribution, and is available at
+ # http://www.eclipse.org/legal/epl-v10.html
+ # 
+ # Contributors:
+ #     Stephan Wahlbrink - initial API and implementation
+ #=============================================================================*/
+
+package de.walware.ecommons.ltk.core.impl;
+
+import de.walware.ecommons.ltk.core.SourceContent;
+
+
+/**
+ * Source model stamp with a hash of the source content.
+ * <p>
+ * It allows to detect that the content is unchanged even if the content stamp changed,
+ * e.g. after save or undo, so that the existing model can be reused.</p>
+ * 
+ * @see SourceUnitModelContainer
+ */
+public class ContentHashSourceModelStamp extends SourceModelStamp {
+	
+	
+	private static final long PRIME1= 0x9E3779B185EBCA87L;
+	private static final long PRIME2= 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3= 0x165667B19E3779F9L;
+	private static final long PRIME4= 0x85EBCA77C2B2AE63L;
+	private static final long PRIME5= 0x27D4EB2F165667C5L;
+	
+	/**
+	 * Computes a 64 bit hash of the text (xxHash like mixing of the chars).
+	 * 
+	 * @param text the text
+	 * @return the hash value
+	 */
+	public static long computeHash(final String text) {
+		final int length= text.length();
+		long h= PRIME5 + length;
+		int i= 0;
+		for (; i + 4 <= length; i+= 4) {
+			long k= text.charAt(i)
+					| ((long) text.charAt(i + 1) << 16)
+					| ((long) text.charAt(i + 2) << 32)
+					| ((long) text.charAt(i + 3) << 48);
+			k*= PRIME2;
+			k= Long.rotateLeft(k, 31);
+			k*= PRIME1;
+			h^= k;
+			h= Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+		}
+		for (; i < length; i++) {
+			h^= text.charAt(i) * PRIME5;
+			h= Long.rotateLeft(h, 11) * PRIME1;
+		}
+		h^= h >>> 33;
+		h*= PRIME2;
+		h^= h >>> 29;
+		h*= PRIME3;
+		h^= h >>> 32;
+		return h;
+	}
+	
+	
+	private final int contentLength;
+	private final long contentHash;
+	
+	
+	public ContentHashSourceModelStamp(final SourceContent content) {
+		super(content.getStamp());
+		this.contentLength= content.getText().length();
+		this.contentHash= computeHash(content.getText());
+	}
+	
+	/**
+	 * Creates a copy of the specified stamp for another source stamp of the same content.
+	 * 
+	 * @param sourceStamp the source stamp
+	 * @param stamp the stamp to copy
+	 */
+	protected ContentHashSourceModelStamp(final long sourceStamp, final ContentHashSourceModelStamp stamp) {
+		super(sourceStamp);
+		this.contentLength= stamp.contentLength;
+		this.contentHash= stamp.contentHash;
+	}
+	
+	
+	/**
+	 * Returns a stamp for the same content with the specified source stamp.
+	 * <p>
+	 * It is used to publish a model under the current content stamp if the content is unchanged
+	 * (see {@link #isSameContent(SourceContent)}). Subclasses with additional state must override
+	 * this method and return an instance of their own class.</p>
+	 * 
+	 * @param sourceStamp the new source stamp
+	 * @return the new stamp
+	 */
+	public ContentHashSourceModelStamp copy(final long sourceStamp) {
+		return new ContentHashSourceModelStamp(sourceStamp, this);
+	}
+	
+	public final long getContentHash() {
+		return this.contentHash;
+	}
+	
+	public final int getContentLength() {
+		return this.contentLength;
+	}
+	
+	/**
+	 * Returns if the specified content is identical to the content of this stamp.
+	 * 
+	 * @param content the content to check
+	 * @return <code>true</code> if the content is the same, otherwise <code>false</code>
+	 */
+	public boolean isSameContent(final SourceContent content) {
+		final String text= content.getText();
+		return (text.length() == this.contentLength
+				&& (content.getStamp() == getSourceStamp() || computeHash(text) == this.contentHash) );
+	}
+	
+}
@@ -0,0 +1,129 @@
+/*=============================================================================#
+ # Copyright (c) 2016 Stephan Wahlbrink (WalWare.de) and others.
+ # All rights reserved. This program and the accompanying materials
+ # are made available under the terms of the Eclipse Public License v1.0
+ # which accompanies this distribution, and is available at
+ # http://www.eclipse.org/legal/epl-v10.html
+ # 
+ # Contributors:
+ #     Stephan Wahlbrink - initial API and implementation
+ #=============================================================================*/
+
+package de.walware.ecommons.ltk.core.impl;
+
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IDocumentListener;
+
+import de.walware.ecommons.ltk.core.SourceContent;
+
+
+/**
+ * Content snapshots of a document.
+ * <p>
+ * The tracker keeps the last snapshot and listens to the changes of the document to record the
+ * range changed since the snapshot. The next snapshot is created based on the last one, so its
+ * line information can be updated incrementally instead of scanning the complete text.</p>
+ * <p>
+ * The snapshots must be created in the lock of the document, the changes of the document must
+ * be done in the same lock.</p>
+ */
+final class DocumentContentTracker implements IDocumentListener {
+	
+	
+	private final IDocument document;
+	
+	private volatile SourceContent content;
+	
+	/** Begin offset of the range changed since the last snapshot */
+	private int changeBegin;
+	/** Distance of the end of the range changed since the last snapshot to the end of the document */
+	private int changeEndDistance;
+	
+	
+	public DocumentContentTracker(final IDocument document) {
+		this.document= document;
+		this.changeBegin= Integer.MAX_VALUE;
+		this.changeEndDistance= Integer.MAX_VALUE;
+	}
+	
+	
+	public IDocument getDocument() {
+		return this.document;
+	}
+	
+	public void connect() {
+		this.document.addDocumentListener(this);
+	}
+	
+	public void disconnect() {
+		this.document.removeDocumentListener(this);
+	}
+	
+	
+	/**
+	 * Returns the last snapshot if it is still valid for the specified stamp.
+	 * 
+	 * @param stamp the current modification stamp of the document
+	 * @return the snapshot or <code>null</code>
+	 */
+	public SourceContent get(final long stamp) {
+		final SourceContent content= this.content;
+		if (content != null && content.getStamp() == stamp) {
+			return content;
+		}
+		return null;
+	}
+	
+	/**
+	 * Creates a new snapshot of the current content of the document.
+	 * <p>
+	 * Must be called in the lock of the document.</p>
+	 * 
+	 * @param stamp the current modification stamp of the document
+	 * @return the snapshot
+	 */
+	public synchronized SourceContent update(final long stamp) {
+		final SourceContent base= this.content;
+		if (base != null && base.getStamp() == stamp) {
+			return base;
+		}
+		final String text= this.document.get();
+		SourceContent content= null;
+		if (base != null && this.changeBegin != Integer.MAX_VALUE) {
+			final int unchanged= this.changeBegin + this.changeEndDistance;
+			final int changeLength= base.getText().length() - unchanged;
+			final int changeTextLength= text.length() - unchanged;
+			if (changeLength >= 0 && changeTextLength >= 0) {
+				content= new SourceContent(stamp, text, 0,
+						base, this.changeBegin, changeLength, changeTextLength );
+			}
+		}
+		if (content == null) {
+			content= new SourceContent(stamp, text);
+		}
+		this.content= (stamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP) ? content : null;
+		this.changeBegin= Integer.MAX_VALUE;
+		this.changeEndDistance= Integer.MAX_VALUE;
+		return content;
+	}
+	
+	
+	@Override
+	public synchronized void documentAboutToBeChanged(final DocumentEvent event) {
+		final int offset= event.getOffset();
+		if (offset < this.changeBegin) {
+			this.changeBegin= offset;
+		}
+		final int endDistance= this.document.getLength() - (offset + event.getLength());
+		if (endDistance < this.changeEndDistance) {
+			this.changeEndDistance= endDistance;
+		}
+	}
+	
+	@Override
+	public void documentChanged(final DocumentEvent event) {
+	}
+	
+}
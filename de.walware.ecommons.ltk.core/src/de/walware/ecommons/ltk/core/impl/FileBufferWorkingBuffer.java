@@ -119,7 +119,7 @@ public class FileBufferWorkingBuffer extends WorkingBuffer {
 		if (detectResourceMode() > 0) {
 			final ITextFileBuffer buffer= getBuffer();
 			if (buffer != null) {
-				return createContentFromDocument(buffer.getDocument());
+				return getContentFromDocument(buffer.getDocument());
 			}
 		}
 		return super.createContent(progress);
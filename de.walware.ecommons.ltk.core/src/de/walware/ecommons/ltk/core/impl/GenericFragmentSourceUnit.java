@@ -38,6 +38,8 @@ public abstract class GenericFragmentSourceUnit implements ISourceUnit {
 	private final long timestamp;
 	
 	private AbstractDocument document;
+	private DocumentContentTracker documentContent;
+	private SourceContent content;
 	
 	private int counter= 0;
 	
@@ -169,11 +171,26 @@ public abstract class GenericFragmentSourceUnit implements ISourceUnit {
 		if (document instanceof ISynchronizable) {
 			lockObject = ((ISynchronizable) document).getLockObject();
 		}
-		if (lockObject == null) {
-			lockObject = this.fragment;
+		if (lockObject != null) {
+			final DocumentContentTracker documentContent;
+			synchronized (this) {
+				if (this.documentContent == null) {
+					this.documentContent= new DocumentContentTracker(document);
+					this.documentContent.connect();
+				}
+				documentContent= this.documentContent;
+			}
+			synchronized (lockObject) {
+				return documentContent.update(document.getModificationStamp());
+			}
 		}
-		synchronized (lockObject) {
-			return new SourceContent(document.getModificationStamp(), document.get());
+		synchronized (this.fragment) {
+			SourceContent content= this.content;
+			if (content == null || content.getStamp() != document.getModificationStamp()) {
+				content= new SourceContent(document.getModificationStamp(), document.get());
+				this.content= content;
+			}
+			return content;
 		}
 	}
 	
@@ -250,6 +267,10 @@ public abstract class GenericFragmentSourceUnit implements ISourceUnit {
 		this.counter--;
 		if (this.counter == 0) {
 			unregister();
+			if (this.documentContent != null) {
+				this.documentContent.disconnect();
+				this.documentContent= null;
+			}
 		}
 	}
 	
@@ -0,0 +1,60 @@
+/*=============================================================================#
+ # Copyright (c) 2016 Stephan Wahlbrink (WalWare.de) and others.
+ # All rights reserved. This program and the accompanying materials
+ # are made available under the terms of the Eclipse Public License v1.0
+ # which accompanies this distribution, and is available at
+ # http://www.eclipse.org/legal/epl-v10.html
+ # 
+ # Contributors:
+ #     Stephan Wahlbrink - initial API and implementation
+ #=============================================================================*/
+
+package de.walware.ecommons.ltk.core.impl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import de.walware.ecommons.ltk.core.model.ISourceUnit;
+import de.walware.ecommons.ltk.core.model.ISourceUnitModelInfo;
+
+
+/**
+ * Serializer of the model info (incl. its AST) of a model type for the {@link ModelFileCache}.
+ * 
+ * @see AbstractModelManager#setModelCache(IModelCacheSerializer)
+ */
+public interface IModelCacheSerializer<M extends ISourceUnitModelInfo> {
+	
+	
+	/**
+	 * Returns the version of the serialized format.
+	 * <p>
+	 * The version must be changed if the format or the content of the model info changes;
+	 * cache entries written with another version are ignored.</p>
+	 * 
+	 * @return the version
+	 */
+	int getVersion();
+	
+	/**
+	 * Writes the model info.
+	 * 
+	 * @param modelInfo the model info to write
+	 * @param out the output
+	 * @throws IOException
+	 */
+	void write(M modelInfo, DataOutput out) throws IOException;
+	
+	/**
+	 * Reads the model info.
+	 * 
+	 * @param su the source unit
+	 * @param stamp the stamp to use for the model info and its AST
+	 * @param in the input
+	 * @return the model info
+	 * @throws IOException if the data is invalid
+	 */
+	M read(ISourceUnit su, ContentHashSourceModelStamp stamp, DataInput in) throws IOException;
+	
+}
@@ -0,0 +1,416 @@
+/*=============================================================================#
+ # Copyright (c) 2016 Stephan Wahlbrink (WalWare.de) and others.
+ # All rights reserved. This program and the accompanying materials
+ # are made available under the terms of the Eclipse Public License v1.0
+ # which accompanies this distribution, and is available at
+ # http://www.eclipse.org/legal/epl-v10.html
+ # 
+ # Contributors:
+ #     Stephan Wahlbrink - initial API and implementation
+ #=============================================================================*/
+
+package de.walware.ecommons.ltk.core.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import de.walware.ecommons.ltk.LTK;
+import de.walware.ecommons.ltk.core.SourceContent;
+import de.walware.ecommons.ltk.core.model.ISourceUnit;
+import de.walware.ecommons.ltk.core.model.ISourceUnitModelInfo;
+import de.walware.ecommons.ltk.internal.core.LTKCorePlugin;
+
+
+/**
+ * Persistent cache of model infos in a directory.
+ * <p>
+ * There is one file per source unit, identified by a key (usually the path of the resource).
+ * An entry is valid if the key, the hash and length of the source content and the version of
+ * the serializer are identical; otherwise it is ignored and overwritten by the next
+ * {@link #store(String, ISourceUnitModelInfo, IModelCacheSerializer) store}.
+ * The data is protected by a checksum; corrupt entries are deleted.</p>
+ * <p>
+ * Entries are written to a temporary file and moved into place, so concurrent readers never
+ * see partially written entries. Entries are read completely into memory and the file is
+ * closed before the data is deserialized, so entries can be replaced or deleted at any time
+ * (files are not mapped, which would lock them on Windows). The methods are thread-safe.</p>
+ */
+public class ModelFileCache {
+	
+	
+	private static final int MAGIC= 0x4C544B4D; // LTKM
+	private static final int FORMAT_VERSION= 1;
+	
+	private static final String ENTRY_EXTENSION= ".bin"; //$NON-NLS-1$
+	private static final String TEMP_EXTENSION= ".tmp"; //$NON-NLS-1$
+	
+	
+	/**
+	 * Input stream reading from a byte buffer.
+	 */
+	private static final class ByteBufferInputStream extends InputStream {
+		
+		private final ByteBuffer buffer;
+		
+		public ByteBufferInputStream(final ByteBuffer buffer) {
+			this.buffer= buffer;
+		}
+		
+		@Override
+		public int read() {
+			return (this.buffer.hasRemaining()) ? (this.buffer.get() & 0xff) : -1;
+		}
+		
+		@Override
+		public int read(final byte[] b, final int off, final int len) {
+			if (len == 0) {
+				return 0;
+			}
+			final int n= Math.min(len, this.buffer.remaining());
+			if (n == 0) {
+				return -1;
+			}
+			this.buffer.get(b, off, n);
+			return n;
+		}
+		
+		@Override
+		public long skip(final long n) {
+			final int skip= (int) Math.max(Math.min(n, this.buffer.remaining()), 0);
+			this.buffer.position(this.buffer.position() + skip);
+			return skip;
+		}
+		
+		@Override
+		public int available() {
+			return this.buffer.remaining();
+		}
+		
+	}
+	
+	/**
+	 * Output stream giving access to its buffer.
+	 */
+	private static final class EntryOutputStream extends ByteArrayOutputStream {
+		
+		public EntryOutputStream() {
+			super(0x2000);
+		}
+		
+		public void writeTo(final OutputStream out, final int offset) throws IOException {
+			out.write(this.buf, offset, this.count - offset);
+		}
+		
+		public void setInt(final int offset, final int value) {
+			this.buf[offset]= (byte) (value >>> 24);
+			this.buf[offset + 1]= (byte) (value >>> 16);
+			this.buf[offset + 2]= (byte) (value >>> 8);
+			this.buf[offset + 3]= (byte) value;
+		}
+		
+		public void setLong(final int offset, final long value) {
+			setInt(offset, (int) (value >>> 32));
+			setInt(offset + 4, (int) value);
+		}
+		
+		public long computeChecksum(final int offset) {
+			final CRC32 crc= new CRC32();
+			crc.update(this.buf, offset, this.count - offset);
+			return crc.getValue();
+		}
+		
+	}
+	
+	
+	private final Path directory;
+	
+	private final LongAdder hitCount= new LongAdder();
+	private final LongAdder missCount= new LongAdder();
+	private final LongAdder corruptCount= new LongAdder();
+	private final LongAdder storeCount= new LongAdder();
+	private final LongAdder loadNanos= new LongAdder();
+	
+	
+	/**
+	 * Creates a new cache.
+	 * 
+	 * @param directory the directory for the cache files, created if necessary
+	 */
+	public ModelFileCache(final Path directory) {
+		if (directory == null) {
+			throw new NullPointerException("directory"); //$NON-NLS-1$
+		}
+		this.directory= directory;
+	}
+	
+	
+	public Path getDirectory() {
+		return this.directory;
+	}
+	
+	/**
+	 * Loads the model info for the specified source content.
+	 * 
+	 * @param key the key of the source unit
+	 * @param su the source unit
+	 * @param content the current source content
+	 * @param serializer the serializer of the model type
+	 * @return the model info or <code>null</code> if there is no valid entry
+	 */
+	public <M extends ISourceUnitModelInfo> M load(final String key, final ISourceUnit su,
+			final SourceContent content, final IModelCacheSerializer<M> serializer) {
+		final long startTime= System.nanoTime();
+		try {
+			final Path file= getEntryFile(key);
+			if (!Files.isRegularFile(file)) {
+				this.missCount.increment();
+				return null;
+			}
+			final ContentHashSourceModelStamp stamp= new ContentHashSourceModelStamp(content);
+			final M modelInfo;
+			try (final FileChannel channel= FileChannel.open(file, StandardOpenOption.READ)) {
+				final long size= channel.size();
+				if (size > Integer.MAX_VALUE) {
+					throw new IOException("Invalid entry size: " + size); //$NON-NLS-1$
+				}
+				final ByteBuffer bytes= ByteBuffer.allocate((int) size);
+				while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+				}
+				bytes.flip();
+				modelInfo= read(bytes, key, su, content, stamp, serializer);
+			}
+			catch (final IOException | RuntimeException e) {
+				this.corruptCount.increment();
+				delete(file);
+				LTKCorePlugin.log(new Status(IStatus.WARNING, LTK.PLUGIN_ID, -1,
+						"Deleted corrupt model cache entry for '" + key + "'.", //$NON-NLS-1$
+						e ));
+				this.missCount.increment();
+				return null;
+			}
+			if (modelInfo == null) {
+				this.missCount.increment();
+				return null;
+			}
+			this.hitCount.increment();
+			return modelInfo;
+		}
+		finally {
+			this.loadNanos.add(System.nanoTime() - startTime);
+		}
+	}
+	
+	private <M extends ISourceUnitModelInfo> M read(final ByteBuffer bytes,
+			final String key, final ISourceUnit su,
+			final SourceContent content, final ContentHashSourceModelStamp stamp,
+			final IModelCacheSerializer<M> serializer) throws IOException {
+		if (bytes.getInt() != MAGIC) {
+			throw new IOException("Invalid magic number."); //$NON-NLS-1$
+		}
+		if (bytes.getInt() != FORMAT_VERSION || bytes.getInt() != serializer.getVersion()) {
+			return null;
+		}
+		final long contentHash= bytes.getLong();
+		final int contentLength= bytes.getInt();
+		final long checksum= bytes.getLong();
+		final int keyLength= bytes.getInt();
+		if (keyLength < 0 || keyLength > bytes.remaining()) {
+			throw new IOException("Invalid key length."); //$NON-NLS-1$
+		}
+		final byte[] keyBytes= new byte[keyLength];
+		bytes.get(keyBytes);
+		if (contentHash != stamp.getContentHash()
+				|| contentLength != content.getText().length()
+				|| !key.equals(new String(keyBytes, StandardCharsets.UTF_8)) ) {
+			return null;
+		}
+		
+		final CRC32 crc= new CRC32();
+		crc.update(bytes.duplicate());
+		if (crc.getValue() != checksum) {
+			throw new IOException("Invalid checksum."); //$NON-NLS-1$
+		}
+		final M modelInfo= serializer.read(su, stamp,
+				new DataInputStream(new ByteBufferInputStream(bytes)) );
+		if (modelInfo == null) {
+			throw new IOException("Invalid model data."); //$NON-NLS-1$
+		}
+		return modelInfo;
+	}
+	
+	/**
+	 * Stores the model info.
+	 * <p>
+	 * The model info is stored only if its stamp is a {@link ContentHashSourceModelStamp}.</p>
+	 * 
+	 * @param key the key of the source unit
+	 * @param modelInfo the model info
+	 * @param serializer the serializer of the model type
+	 * @return <code>true</code> if the model info was stored, otherwise <code>false</code>
+	 */
+	public <M extends ISourceUnitModelInfo> boolean store(final String key, final M modelInfo,
+			final IModelCacheSerializer<M> serializer) {
+		if (!(modelInfo.getStamp() instanceof ContentHashSourceModelStamp)) {
+			return false;
+		}
+		final ContentHashSourceModelStamp stamp= (ContentHashSourceModelStamp) modelInfo.getStamp();
+		Path tempFile= null;
+		try {
+			final EntryOutputStream buffer= new EntryOutputStream();
+			final DataOutputStream out= new DataOutputStream(buffer);
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(serializer.getVersion());
+			out.writeLong(stamp.getContentHash());
+			out.writeInt(stamp.getContentLength());
+			final int checksumOffset= out.size();
+			out.writeLong(0);
+			final byte[] keyBytes= key.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(keyBytes.length);
+			out.write(keyBytes);
+			final int dataOffset= out.size();
+			serializer.write(modelInfo, out);
+			out.flush();
+			buffer.setLong(checksumOffset, buffer.computeChecksum(dataOffset));
+			
+			final Path file= getEntryFile(key);
+			Files.createDirectories(file.getParent());
+			tempFile= Files.createTempFile(file.getParent(), null, TEMP_EXTENSION);
+			try (final OutputStream fileOut= Files.newOutputStream(tempFile)) {
+				buffer.writeTo(fileOut, 0);
+			}
+			try {
+				Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE );
+			}
+			catch (final AtomicMoveNotSupportedException e) {
+				Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			tempFile= null;
+			this.storeCount.increment();
+			return true;
+		}
+		catch (final IOException | RuntimeException e) {
+			LTKCorePlugin.log(new Status(IStatus.ERROR, LTK.PLUGIN_ID, -1,
+					"An error occurred when writing the model cache entry for '" + key + "'.", //$NON-NLS-1$
+					e ));
+			return false;
+		}
+		finally {
+			if (tempFile != null) {
+				delete(tempFile);
+			}
+		}
+	}
+	
+	/**
+	 * Removes the entry for the specified key.
+	 * 
+	 * @param key the key of the source unit
+	 */
+	public void remove(final String key) {
+		delete(getEntryFile(key));
+	}
+	
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		if (!Files.isDirectory(this.directory)) {
+			return;
+		}
+		try (final DirectoryStream<Path> files= Files.newDirectoryStream(this.directory)) {
+			for (final Path file : files) {
+				final String name= file.getFileName().toString();
+				if (name.endsWith(ENTRY_EXTENSION) || name.endsWith(TEMP_EXTENSION)) {
+					delete(file);
+				}
+			}
+		}
+		catch (final IOException e) {
+			LTKCorePlugin.log(new Status(IStatus.ERROR, LTK.PLUGIN_ID, -1,
+					"An error occurred when clearing the model cache.", //$NON-NLS-1$
+					e ));
+		}
+	}
+	
+	
+	/**
+	 * Returns the number of {@link #load loads} returning a model info.
+	 * 
+	 * @return the count
+	 */
+	public long getHitCount() {
+		return this.hitCount.sum();
+	}
+	
+	/**
+	 * Returns the number of {@link #load loads} without valid entry.
+	 * 
+	 * @return the count
+	 */
+	public long getMissCount() {
+		return this.missCount.sum();
+	}
+	
+	/**
+	 * Returns the number of corrupt entries deleted.
+	 * 
+	 * @return the count
+	 */
+	public long getCorruptCount() {
+		return this.corruptCount.sum();
+	}
+	
+	/**
+	 * Returns the number of stored entries.
+	 * 
+	 * @return the count
+	 */
+	public long getStoreCount() {
+		return this.storeCount.sum();
+	}
+	
+	/**
+	 * Returns the total time spent in {@link #load loads}.
+	 * 
+	 * @return the time in nanoseconds
+	 */
+	public long getLoadNanos() {
+		return this.loadNanos.sum();
+	}
+	
+	
+	private Path getEntryFile(final String key) {
+		final String hash= Long.toHexString(ContentHashSourceModelStamp.computeHash(key));
+		return this.directory.resolve(hash + ENTRY_EXTENSION);
+	}
+	
+	private static void delete(final Path file) {
+		try {
+			Files.deleteIfExists(file);
+		}
+		catch (final IOException e) {
+			// retried by the next store
+		}
+	}
+	
+}
@@ -11,19 +11,84 @@
 
 package de.walware.ecommons.ltk.core.impl;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 import de.walware.jcommons.collections.ImCollections;
+import de.walware.jcommons.collections.ImList;
 
 import de.walware.ecommons.ltk.IElementName;
 
 
+/**
+ * Accumulates the name accesses of a name.
+ * <p>
+ * The accesses are stored in an array growing on demand; {@link #finish()} trims it to
+ * the exact size.</p>
+ */
 public final class NameAccessAccumulator<TName extends IElementName> {
 	
 	
+	private static final Object[] NO_NAMES= new Object[0];
+	
+	private static final int INITIAL_CAPACITY= 2;
+	
+	
+	/**
+	 * Mutable view of the accumulated accesses.
+	 */
+	private final class AccumulatingList extends AbstractList<TName> {
+		
+		@Override
+		public int size() {
+			return NameAccessAccumulator.this.size;
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public TName get(final int index) {
+			if (index < 0 || index >= NameAccessAccumulator.this.size) {
+				throw new IndexOutOfBoundsException("index: " + index); //$NON-NLS-1$
+			}
+			return (TName) NameAccessAccumulator.this.names[index];
+		}
+		
+		@Override
+		public TName set(final int index, final TName element) {
+			final TName previous= get(index);
+			NameAccessAccumulator.this.names[index]= element;
+			return previous;
+		}
+		
+		@Override
+		public void add(final int index, final TName element) {
+			if (index < 0 || index > NameAccessAccumulator.this.size) {
+				throw new IndexOutOfBoundsException("index: " + index); //$NON-NLS-1$
+			}
+			insert(index, element);
+			this.modCount++;
+		}
+		
+		@Override
+		public TName remove(final int index) {
+			final TName previous= get(index);
+			final Object[] names= NameAccessAccumulator.this.names;
+			final int size= --NameAccessAccumulator.this.size;
+			System.arraycopy(names, index + 1, names, index, size - index);
+			names[size]= null;
+			this.modCount++;
+			return previous;
+		}
+		
+	}
+	
+	
 	private final String label;
 	
+	private Object[] names;
+	private int size;
+	
 	private List<TName> list;
 	
 	
@@ -32,19 +97,61 @@ public final class NameAccessAccumulator<TName extends IElementName> {
 			throw new NullPointerException("label"); //$NON-NLS-1$
 		}
 		this.label= label;
-		this.list= new ArrayList<>(8);
+		this.names= NO_NAMES;
+	}
+	
+	
+	/**
+	 * Adds a name access.
+	 * 
+	 * @param name the name access
+	 */
+	public void add(final TName name) {
+		if (this.list instanceof ImList) {
+			throw new IllegalStateException("finished"); //$NON-NLS-1$
+		}
+		insert(this.size, name);
 	}
 	
+	private void insert(final int index, final TName name) {
+		if (this.size == this.names.length) {
+			this.names= Arrays.copyOf(this.names,
+					(this.size < INITIAL_CAPACITY) ? INITIAL_CAPACITY : this.size + (this.size >> 1) );
+		}
+		if (index < this.size) {
+			System.arraycopy(this.names, index, this.names, index + 1, this.size - index);
+		}
+		this.names[index]= name;
+		this.size++;
+	}
 	
+	@SuppressWarnings("unchecked")
 	public void finish() {
-		this.list= ImCollections.toList(this.list);
+		if (this.list instanceof ImList) {
+			return;
+		}
+		final Object[] names= (this.names.length == this.size) ?
+				this.names : Arrays.copyOf(this.names, this.size);
+		this.names= NO_NAMES;
+		this.list= (List<TName>) (List<?>) ImCollections.newList(names);
 	}
 	
 	public String getLabel() {
 		return this.label;
 	}
 	
+	/**
+	 * Returns the list of the name accesses.
+	 * <p>
+	 * Before {@link #finish()}, the list is a mutable view of the accumulator, afterwards it is
+	 * an immutable list.</p>
+	 * 
+	 * @return the list
+	 */
 	public List<TName> getList() {
+		if (this.list == null) {
+			this.list= new AccumulatingList();
+		}
 		return this.list;
 	}
 	
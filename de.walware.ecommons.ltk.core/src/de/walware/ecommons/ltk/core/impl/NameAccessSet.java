@@ -22,6 +22,12 @@ import de.walware.ecommons.ltk.core.model.INameAccess;
 import de.walware.ecommons.ltk.core.model.INameAccessSet;
 
 
+/**
+ * Name access set with the names stored in a sorted array.
+ * <p>
+ * The accesses of a name are stored in a parallel array, so lookups of names, prefixes and
+ * ranges are binary searches and no map is retained.</p>
+ */
 public final class NameAccessSet<TNameAccess extends INameAccess<?, TNameAccess>>
 		implements INameAccessSet<TNameAccess> {
 	
@@ -34,9 +40,12 @@ public final class NameAccessSet<TNameAccess extends INameAccess<?, TNameAccess>
 	}
 	
 	
+	private final String[] labelArray;
+	
 	private final ImList<String> labelsSorted;
 	
-	private final Map<String, NameAccessAccumulator<TNameAccess>> map;
+	/** Accesses (ImList) for the labels in {@link #labelArray} */
+	private final Object[] accessArray;
 	
 	
 	public NameAccessSet(final Map<String, NameAccessAccumulator<TNameAccess>> map) {
@@ -48,8 +57,14 @@ public final class NameAccessSet<TNameAccess extends INameAccess<?, TNameAccess>
 		}
 		Arrays.sort(labelArray);
 		
+		final Object[] accessArray= new Object[labelArray.length];
+		for (i= 0; i < labelArray.length; i++) {
+			accessArray[i]= map.get(labelArray[i]).getList();
+		}
+		
+		this.labelArray= labelArray;
 		this.labelsSorted= ImCollections.newList(labelArray);
-		this.map= map;
+		this.accessArray= accessArray;
 	}
 	
 	
@@ -59,9 +74,60 @@ public final class NameAccessSet<TNameAccess extends INameAccess<?, TNameAccess>
 	}
 	
 	@Override
+	public ImList<String> getNamesWithPrefix(final String prefix) {
+		final int start= lowerBound(prefix);
+		int low= start;
+		int high= this.labelArray.length;
+		while (low < high) {
+			final int mid= (low + high) >>> 1;
+			if (this.labelArray[mid].startsWith(prefix)) {
+				low= mid + 1;
+			}
+			else {
+				high= mid;
+			}
+		}
+		return getNames(start, low);
+	}
+	
+	@Override
+	public ImList<String> getNamesInRange(final String fromName, final String toName) {
+		final int start= (fromName != null) ? lowerBound(fromName) : 0;
+		final int end= (toName != null) ? lowerBound(toName) : this.labelArray.length;
+		return getNames(start, Math.max(start, end));
+	}
+	
+	private ImList<String> getNames(final int start, final int end) {
+		if (start == 0 && end == this.labelArray.length) {
+			return this.labelsSorted;
+		}
+		return ImCollections.newList(Arrays.copyOfRange(this.labelArray, start, end));
+	}
+	
+	/**
+	 * Returns the index of the first label >= name.
+	 */
+	private int lowerBound(final String name) {
+		final String[] labels= this.labelArray;
+		int low= 0;
+		int high= labels.length;
+		while (low < high) {
+			final int mid= (low + high) >>> 1;
+			if (labels[mid].compareTo(name) < 0) {
+				low= mid + 1;
+			}
+			else {
+				high= mid;
+			}
+		}
+		return low;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
 	public ImList<TNameAccess> getAllInUnit(final String label) {
-		final NameAccessAccumulator<TNameAccess> shared= this.map.get(label);
-		return (shared != null) ? (ImList<TNameAccess>) shared.getList() : null;
+		final int idx= Arrays.binarySearch(this.labelArray, label);
+		return (idx >= 0) ? (ImList<TNameAccess>) this.accessArray[idx] : null;
 	}
 	
 }
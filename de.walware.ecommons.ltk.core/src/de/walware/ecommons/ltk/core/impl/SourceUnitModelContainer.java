@@ -11,13 +11,24 @@
 
 package de.walware.ecommons.ltk.core.impl;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.ProgressMonitorWrapper;
 
 import de.walware.ecommons.ltk.AstInfo;
 import de.walware.ecommons.ltk.IModelManager;
 import de.walware.ecommons.ltk.IProblemRequestor;
 import de.walware.ecommons.ltk.LTK;
 import de.walware.ecommons.ltk.WorkingContext;
+import de.walware.ecommons.ltk.core.ISourceModelStamp;
 import de.walware.ecommons.ltk.core.SourceContent;
 import de.walware.ecommons.ltk.core.model.ISourceUnit;
 import de.walware.ecommons.ltk.core.model.ISourceUnitModelInfo;
@@ -27,6 +38,116 @@ import de.walware.ecommons.ltk.core.model.IWorkspaceSourceUnit;
 public abstract class SourceUnitModelContainer<U extends ISourceUnit, M extends ISourceUnitModelInfo> {
 	
 	
+	/**
+	 * Content stamp verified to have the same content as a model stamp.
+	 */
+	private static final class VerifiedContent {
+		
+		private final ISourceModelStamp modelStamp;
+		private final long contentStamp;
+		
+		public VerifiedContent(final ISourceModelStamp modelStamp, final long contentStamp) {
+			this.modelStamp= modelStamp;
+			this.contentStamp= contentStamp;
+		}
+		
+	}
+	
+	
+	/**
+	 * Reconcile in progress. Other threads requesting the same content stamp wait for it.
+	 */
+	private static final class Reconcile extends CompletableFuture<Void> {
+		
+		private final long contentStamp;
+		private final int level;
+		
+		private volatile boolean superseded;
+		
+		public Reconcile(final long contentStamp, final int level) {
+			this.contentStamp= contentStamp;
+			this.level= level;
+		}
+		
+		/**
+		 * Returns if the result of this reconcile satisfies a request for the specified level.
+		 */
+		public boolean covers(final long contentStamp, final int level) {
+			return (this.contentStamp == contentStamp
+					&& (level & 0xf) <= (this.level & 0xf)
+					&& (level & ~this.level & ~0xf) == 0 );
+		}
+		
+	}
+	
+	/**
+	 * Monitor for the reconcile, additionally canceled if the reconcile is superseded.
+	 */
+	private static final class ReconcileMonitor extends ProgressMonitorWrapper {
+		
+		private final Reconcile reconcile;
+		
+		public ReconcileMonitor(final IProgressMonitor monitor, final Reconcile reconcile) {
+			super((monitor != null) ? monitor : new NullProgressMonitor());
+			this.reconcile= reconcile;
+		}
+		
+		@Override
+		public boolean isCanceled() {
+			return (this.reconcile.superseded || super.isCanceled());
+		}
+		
+	}
+	
+	/** If the current thread runs a reconcile (of any container) */
+	private static final ThreadLocal<Boolean> IN_RECONCILE= new ThreadLocal<>();
+	
+	
+	private static final LongAdder UNCHANGED_CONTENT_COUNTER= new LongAdder();
+	private static final LongAdder RECONCILE_JOINED_COUNTER= new LongAdder();
+	private static final LongAdder RECONCILE_SUPERSEDED_COUNTER= new LongAdder();
+	private static final LongAdder RECONCILE_COMPLETED_COUNTER= new LongAdder();
+	
+	/**
+	 * Returns the number of reconciles skipped because the content of a source unit was unchanged
+	 * according to its {@link ContentHashSourceModelStamp}.
+	 * 
+	 * @return the count
+	 */
+	public static long getUnchangedContentCount() {
+		return UNCHANGED_CONTENT_COUNTER.sum();
+	}
+	
+	/**
+	 * Returns the number of reconcile requests which joined a reconcile of the same content
+	 * already in progress instead of reconciling the content again.
+	 * 
+	 * @return the count
+	 */
+	public static long getReconcileJoinedCount() {
+		return RECONCILE_JOINED_COUNTER.sum();
+	}
+	
+	/**
+	 * Returns the number of reconciles canceled because a reconcile of newer content was
+	 * requested.
+	 * 
+	 * @return the count
+	 */
+	public static long getReconcileSupersededCount() {
+		return RECONCILE_SUPERSEDED_COUNTER.sum();
+	}
+	
+	/**
+	 * Returns the number of reconciles completed by the model manager.
+	 * 
+	 * @return the count
+	 */
+	public static long getReconcileCompletedCount() {
+		return RECONCILE_COMPLETED_COUNTER.sum();
+	}
+	
+	
 	private final WorkingContext mode;
 	
 	private final U unit;
@@ -35,6 +156,11 @@ public abstract class SourceUnitModelContainer<U extends ISourceUnit, M extends
 	
 	private M modelInfo;
 	
+	private volatile VerifiedContent verifiedContent;
+	
+	private final Object reconcileLock= new Object();
+	private Reconcile reconcile;
+	
 	
 	public SourceUnitModelContainer(final U unit) {
 		this.unit= unit;
@@ -67,35 +193,383 @@ public abstract class SourceUnitModelContainer<U extends ISourceUnit, M extends
 		return this.unit.getContent(monitor);
 	}
 	
+	/**
+	 * Returns the AST of the source unit.
+	 * <p>
+	 * If <code>ensureSync</code> is set, the returned AST has the current content stamp. If only
+	 * the content stamp changed but not the content, the current AST is published under the
+	 * current content stamp (see {@link #restampAst(AstInfo, ISourceModelStamp)}), otherwise
+	 * the source unit is reconciled.</p>
+	 */
 	public AstInfo getAstInfo(final boolean ensureSync, final IProgressMonitor monitor) {
-		if (ensureSync) {
-			getModelManager().reconcile(this, IModelManager.AST, monitor);
+		if (ensureSync
+				&& !updateAstStamp(this.unit.getContentStamp(monitor), monitor) ) {
+			reconcile(IModelManager.AST, monitor);
 		}
 		return this.astInfo;
 	}
 	
+	/**
+	 * Returns the model info of the source unit.
+	 * <p>
+	 * If the sync level is {@link IModelManager#MODEL_FILE} or higher, the returned model info has
+	 * the current content stamp. If only the content stamp changed but not the content, the
+	 * current model info is published under the current content stamp (see
+	 * {@link #restampModel(ISourceUnitModelInfo, AstInfo)}), otherwise the source unit is
+	 * reconciled.</p>
+	 */
 	public M getModelInfo(final int syncLevel, final IProgressMonitor monitor) {
 		if ((syncLevel & IModelManager.REFRESH) != 0) {
 			clear();
 		}
 		if ((syncLevel & 0xf) >= IModelManager.MODEL_FILE) {
-			final M currentModel= this.modelInfo;
 			if ((syncLevel & IModelManager.RECONCILE) != 0
-					|| currentModel == null
-					|| currentModel.getStamp().getSourceStamp() == 0
-					|| currentModel.getStamp().getSourceStamp() != this.unit.getContentStamp(monitor) ) {
-				getModelManager().reconcile(this, syncLevel, monitor);
+					|| !updateModelStamp(this.unit.getContentStamp(monitor), monitor) ) {
+				reconcile(syncLevel, monitor);
 			}
 		}
 		return this.modelInfo;
 	}
 	
+	/**
+	 * Updates the current AST to the content stamp if its content is unchanged.
+	 * 
+	 * @return <code>true</code> if the current AST has the content stamp, otherwise
+	 *     <code>false</code>
+	 */
+	private boolean updateAstStamp(final long contentStamp, final IProgressMonitor monitor) {
+		final AstInfo currentAst= this.astInfo;
+		if (currentAst == null || currentAst.getStamp().getSourceStamp() == 0) {
+			return false;
+		}
+		if (currentAst.getStamp().getSourceStamp() == contentStamp) {
+			return true;
+		}
+		if (!isUpToDate(currentAst.getStamp(), contentStamp, monitor)) {
+			return false;
+		}
+		final ISourceModelStamp newStamp= copyStamp(currentAst.getStamp(), contentStamp);
+		final AstInfo newAst= (newStamp != null) ? restampAst(currentAst, newStamp) : null;
+		if (newAst == null || newAst.getStamp().getSourceStamp() != contentStamp) {
+			return false;
+		}
+		synchronized (this.reconcileLock) {
+			if (this.reconcile != null || this.astInfo != currentAst) {
+				return false;
+			}
+			setAst(newAst);
+		}
+		return true;
+	}
+	
+	/**
+	 * Updates the current model info (and the AST of the same content) to the content stamp if
+	 * its content is unchanged.
+	 * 
+	 * @return <code>true</code> if the current model info has the content stamp, otherwise
+	 *     <code>false</code>
+	 */
+	private boolean updateModelStamp(final long contentStamp, final IProgressMonitor monitor) {
+		final M currentModel= this.modelInfo;
+		if (currentModel == null || currentModel.getStamp().getSourceStamp() == 0) {
+			return false;
+		}
+		if (currentModel.getStamp().getSourceStamp() == contentStamp) {
+			return true;
+		}
+		if (!isUpToDate(currentModel.getStamp(), contentStamp, monitor)) {
+			return false;
+		}
+		final ISourceModelStamp newStamp= copyStamp(currentModel.getStamp(), contentStamp);
+		final AstInfo newModelAst= (newStamp != null) ? restampAst(currentModel.getAst(), newStamp) : null;
+		final M newModel= (newModelAst != null) ? restampModel(currentModel, newModelAst) : null;
+		if (newModel == null || newModel.getStamp().getSourceStamp() != contentStamp) {
+			return false;
+		}
+		synchronized (this.reconcileLock) {
+			if (this.reconcile != null || this.modelInfo != currentModel) {
+				return false;
+			}
+			final AstInfo currentAst= this.astInfo;
+			if (currentAst != null && currentAst.getStamp().equals(currentModel.getStamp())) {
+				final AstInfo newAst= (currentAst == currentModel.getAst()) ?
+						newModel.getAst() : restampAst(currentAst, newModel.getStamp());
+				if (newAst != null) {
+					setAst(newAst);
+				}
+			}
+			this.modelInfo= newModel;
+		}
+		return true;
+	}
+	
+	private static ISourceModelStamp copyStamp(final ISourceModelStamp stamp, final long contentStamp) {
+		if (stamp instanceof ContentHashSourceModelStamp) {
+			return ((ContentHashSourceModelStamp) stamp).copy(contentStamp);
+		}
+		return null;
+	}
+	
+	/**
+	 * Creates a copy of the AST with the specified stamp.
+	 * <p>
+	 * It is used to publish the AST under the current content stamp if only the content stamp
+	 * changed but not the content, so that the stamp of the AST is equal to the stamp of the
+	 * content (document) again. The default implementation supports the class {@link AstInfo}
+	 * itself; for subclasses it returns <code>null</code>.</p>
+	 * 
+	 * @param ast the current AST
+	 * @param stamp the new stamp
+	 * @return the new AST or <code>null</code> if not supported (the source unit is reconciled)
+	 */
+	protected AstInfo restampAst(final AstInfo ast, final ISourceModelStamp stamp) {
+		if (ast.getClass() != AstInfo.class) {
+			return null;
+		}
+		return new AstInfo(ast.getLevel(), stamp, ast.root);
+	}
+	
+	/**
+	 * Creates a copy of the model info with the specified AST and its stamp.
+	 * <p>
+	 * It is used to publish the model info under the current content stamp if only the content
+	 * stamp changed but not the content. Model infos are created by the model manager, therefore
+	 * the default implementation returns <code>null</code>; containers of model infos with
+	 * {@link ContentHashSourceModelStamp} should override it.</p>
+	 * 
+	 * @param modelInfo the current model info
+	 * @param ast the new AST (copy of the AST of the model info with the new stamp)
+	 * @return the new model info or <code>null</code> if not supported (the source unit is
+	 *     reconciled)
+	 */
+	protected M restampModel(final M modelInfo, final AstInfo ast) {
+		return null;
+	}
+	
+	/**
+	 * Checks if the model with the specified stamp is up-to-date with the current content.
+	 * <p>
+	 * If the source stamps differ but the model stamp is a {@link ContentHashSourceModelStamp},
+	 * the current content is compared with the hash of the model content. The result of the
+	 * comparison is remembered for the content stamp; only the comparison itself is counted
+	 * as skipped reconcile ({@link #getUnchangedContentCount()}).</p>
+	 * <p>
+	 * The model with the old stamp must not be published as is; see
+	 * {@link #getAstInfo(boolean, IProgressMonitor)} and
+	 * {@link #getModelInfo(int, IProgressMonitor)}.</p>
+	 * 
+	 * @param stamp the stamp of the model
+	 * @param contentStamp the current stamp of the content
+	 * @param monitor
+	 * @return <code>true</code> if up-to-date, otherwise <code>false</code>
+	 */
+	protected boolean isUpToDate(final ISourceModelStamp stamp, final long contentStamp,
+			final IProgressMonitor monitor) {
+		if (stamp.getSourceStamp() == contentStamp) {
+			return true;
+		}
+		if (stamp instanceof ContentHashSourceModelStamp && contentStamp != 0) {
+			final VerifiedContent verified= this.verifiedContent;
+			if (verified != null && verified.modelStamp == stamp
+					&& verified.contentStamp == contentStamp) {
+				return true;
+			}
+			final SourceContent content= getParseContent(monitor);
+			if (content != null && content.getStamp() == contentStamp
+					&& ((ContentHashSourceModelStamp) stamp).isSameContent(content) ) {
+				this.verifiedContent= new VerifiedContent(stamp, contentStamp);
+				UNCHANGED_CONTENT_COUNTER.increment();
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Reconciles the source unit by the model manager.
+	 * <p>
+	 * Concurrent requests for the same content stamp join a reconcile in progress if it covers
+	 * the requested level and wait for its completion. A request for another content stamp
+	 * supersedes the reconcile in progress: its monitor reports cancellation and threads waiting
+	 * for it retry with the current content. Requests with unknown content stamp (0) and nested
+	 * requests while the thread reconciles another unit are passed directly to the model manager
+	 * (the latter to avoid deadlocks between dependent units).</p>
+	 * 
+	 * @param level the sync level
+	 * @param monitor
+	 */
+	protected void reconcile(final int level, final IProgressMonitor monitor) {
+		if (IN_RECONCILE.get() != null) {
+			reconcileByManager(level, monitor);
+			return;
+		}
+		while (true) {
+			final long contentStamp= this.unit.getContentStamp(monitor);
+			if (contentStamp == 0) {
+				runReconcile(null, level, monitor);
+				return;
+			}
+			final Reconcile reconcile;
+			final Reconcile otherReconcile;
+			synchronized (this.reconcileLock) {
+				otherReconcile= this.reconcile;
+				if (otherReconcile != null && otherReconcile.contentStamp == contentStamp) {
+					reconcile= null;
+				}
+				else {
+					if (otherReconcile != null) {
+						otherReconcile.superseded= true;
+					}
+					reconcile= new Reconcile(contentStamp, level);
+					this.reconcile= reconcile;
+				}
+			}
+			
+			if (reconcile != null) {
+				if (otherReconcile != null) {
+					RECONCILE_SUPERSEDED_COUNTER.increment();
+				}
+				try {
+					runReconcile(reconcile, level, monitor);
+				}
+				finally {
+					synchronized (this.reconcileLock) {
+						if (this.reconcile == reconcile) {
+							this.reconcile= null;
+						}
+					}
+				}
+				if (reconcile.superseded && (monitor == null || !monitor.isCanceled())) {
+					continue;
+				}
+				return;
+			}
+			
+			final boolean join= otherReconcile.covers(contentStamp, level);
+			if (join) {
+				RECONCILE_JOINED_COUNTER.increment();
+			}
+			if (!await(otherReconcile, monitor)) {
+				return;
+			}
+			if (join && !otherReconcile.isCompletedExceptionally()) {
+				return;
+			}
+			// superseded, failed or not sufficient: retry
+		}
+	}
+	
+	private void runReconcile(final Reconcile reconcile, final int level,
+			final IProgressMonitor monitor) {
+		IN_RECONCILE.set(Boolean.TRUE);
+		try {
+			if (reconcile != null) {
+				final ReconcileMonitor reconcileMonitor= new ReconcileMonitor(monitor, reconcile);
+				reconcileByManager(level, reconcileMonitor);
+				if (reconcileMonitor.isCanceled()) {
+					reconcile.completeExceptionally(new CancellationException());
+					return;
+				}
+				reconcile.complete(null);
+			}
+			else {
+				reconcileByManager(level, monitor);
+			}
+			RECONCILE_COMPLETED_COUNTER.increment();
+		}
+		catch (final OperationCanceledException e) {
+			if (reconcile != null) {
+				reconcile.completeExceptionally(e);
+				if (reconcile.superseded) {
+					return;
+				}
+			}
+			throw e;
+		}
+		catch (final RuntimeException | Error e) {
+			if (reconcile != null) {
+				reconcile.completeExceptionally(e);
+			}
+			throw e;
+		}
+		finally {
+			IN_RECONCILE.remove();
+		}
+	}
+	
+	/**
+	 * Reconciles the source unit by the model manager.
+	 * <p>
+	 * In the {@link LTK#PERSISTENCE_CONTEXT persistence context} the model info is loaded from
+	 * the model cache of the model manager if available, and new model infos are stored into
+	 * it (see {@link AbstractModelManager#setModelCache(IModelCacheSerializer)}).</p>
+	 * <p>
+	 * A cached model info is loaded only if the container doesn't have a model info yet. It is
+	 * installed by {@link #setModel(ISourceUnitModelInfo)} as initial model info without
+	 * creating a delta or an element changed event; this is intended: there is no previous
+	 * model info to compare with, and clients get the initial model info by requesting it.</p>
+	 */
+	@SuppressWarnings("unchecked")
+	private void reconcileByManager(final int level, final IProgressMonitor monitor) {
+		final IModelManager modelManager= getModelManager();
+		if (this.mode != LTK.PERSISTENCE_CONTEXT || !(modelManager instanceof AbstractModelManager)
+				|| ((AbstractModelManager) modelManager).getModelCache() == null) {
+			modelManager.reconcile(this, level, monitor);
+			return;
+		}
+		final AbstractModelManager manager= (AbstractModelManager) modelManager;
+		final M currentModel= this.modelInfo;
+		if (currentModel == null
+				&& (level & 0xf) <= IModelManager.MODEL_FILE
+				&& (level & (IModelManager.REFRESH | IModelManager.RECONCILE)) == 0) {
+			final M cachedModel= (M) manager.loadCachedModel(this, monitor);
+			if (cachedModel != null) {
+				setModel(cachedModel);
+				return;
+			}
+		}
+		manager.reconcile(this, level, monitor);
+		final M newModel= this.modelInfo;
+		if (newModel != null && newModel != currentModel
+				&& (monitor == null || !monitor.isCanceled()) ) {
+			manager.storeCachedModel(this, newModel);
+		}
+	}
+	
+	/**
+	 * Waits for the completion of the reconcile.
+	 * 
+	 * @return <code>true</code> if completed, <code>false</code> if the monitor was canceled
+	 */
+	private static boolean await(final Reconcile reconcile, final IProgressMonitor monitor) {
+		while (true) {
+			if (monitor != null && monitor.isCanceled()) {
+				return false;
+			}
+			try {
+				reconcile.get(100, TimeUnit.MILLISECONDS);
+				return true;
+			}
+			catch (final TimeoutException e) {
+				continue;
+			}
+			catch (final ExecutionException | CancellationException e) {
+				return true;
+			}
+			catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+	
 	protected abstract IModelManager getModelManager();
 	
 	
 	public void clear() {
 		this.astInfo= null;
 		this.modelInfo= null;
+		this.verifiedContent= null;
 	}
 	
 	public AstInfo getCurrentAst() {
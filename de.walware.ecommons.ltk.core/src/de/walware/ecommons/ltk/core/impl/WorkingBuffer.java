@@ -13,6 +13,13 @@ package de.walware.ecommons.ltk.core.impl;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.core.filebuffers.FileBuffers;
@@ -21,13 +28,16 @@ import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.filesystem.URIUtil;
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.content.IContentDescription;
 import org.eclipse.jface.text.AbstractDocument;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentExtension4;
@@ -85,6 +95,8 @@ public class WorkingBuffer implements IWorkingBuffer {
 	 */
 	private byte mode;
 	
+	private volatile DocumentContentTracker documentContent;
+	
 	public WorkingBuffer(final ISourceUnit unit) {
 		this.unit= unit;
 	}
@@ -166,7 +178,7 @@ public class WorkingBuffer implements IWorkingBuffer {
 		final SubMonitor progress= SubMonitor.convert(monitor);
 		final IDocument doc= ((getContentMode() & DOCUMENT) != 0) ? getDocument(monitor) : getDocument();
 		if (doc != null) {
-			return createContentFromDocument(doc);
+			return getContentFromDocument(doc);
 		}
 		return createContent(progress);
 	}
@@ -178,6 +190,11 @@ public class WorkingBuffer implements IWorkingBuffer {
 	@Override
 	public synchronized void releaseDocument(final IProgressMonitor monitor) {
 		this.document= null;
+		final DocumentContentTracker documentContent= this.documentContent;
+		if (documentContent != null) {
+			documentContent.disconnect();
+			this.documentContent= null;
+		}
 	}
 	
 	@Override
@@ -214,6 +231,52 @@ public class WorkingBuffer implements IWorkingBuffer {
 	}
 	
 	
+	/**
+	 * Returns the content of the specified document.
+	 * <p>
+	 * The content is reused as long as the modification stamp of the document doesn't change,
+	 * so repeated requests for an unchanged document don't copy its text again. If the document
+	 * changed, the line information of the new content is updated based on the previous
+	 * content.</p>
+	 * 
+	 * @param doc the document
+	 * @return the content
+	 */
+	protected final SourceContent getContentFromDocument(final IDocument doc) {
+		// the stamp of the content matches the document only if created under the document lock
+		final Object lock;
+		if (doc instanceof IDocumentExtension4 && doc instanceof ISynchronizable
+				&& (lock= ((ISynchronizable) doc).getLockObject()) != null) {
+			DocumentContentTracker documentContent= this.documentContent;
+			if (documentContent == null || documentContent.getDocument() != doc) {
+				documentContent= connectDocumentContent(doc);
+			}
+			{	final SourceContent content= documentContent.get(
+						((IDocumentExtension4) doc).getModificationStamp() );
+				if (content != null) {
+					return content;
+				}
+			}
+			synchronized (lock) {
+				return documentContent.update(((IDocumentExtension4) doc).getModificationStamp());
+			}
+		}
+		return createContentFromDocument(doc);
+	}
+	
+	private synchronized DocumentContentTracker connectDocumentContent(final IDocument doc) {
+		DocumentContentTracker documentContent= this.documentContent;
+		if (documentContent == null || documentContent.getDocument() != doc) {
+			if (documentContent != null) {
+				documentContent.disconnect();
+			}
+			documentContent= new DocumentContentTracker(doc);
+			documentContent.connect();
+			this.documentContent= documentContent;
+		}
+		return documentContent;
+	}
+	
 	protected AbstractDocument createDocument(final SubMonitor progress) {
 		final IDocument fileDoc= createEmptyDocument();
 		if (!(fileDoc instanceof AbstractDocument)) {
@@ -266,8 +329,79 @@ public class WorkingBuffer implements IWorkingBuffer {
 		}
 	}
 	
+	/**
+	 * Reads the text of the file using NIO if possible.
+	 * <p>
+	 * The file is read in one step into a heap buffer and decoded directly into a buffer sized
+	 * according to the file length.</p>
+	 * 
+	 * @param file the file
+	 * @param progress
+	 * @return the text or <code>null</code> if the file cannot be read this way
+	 */
+	private static String readFileText(final IFile file, final SubMonitor progress) {
+		final IPath location= file.getLocation();
+		if (location == null) {
+			return null;
+		}
+		try {
+			if (!file.isSynchronized(IResource.DEPTH_ZERO)) {
+				return null;
+			}
+			final Charset charset= Charset.forName(file.getCharset());
+			int bomLength= 0;
+			final IContentDescription description= file.getContentDescription();
+			if (description != null) {
+				final byte[] bom= (byte[]) description.getProperty(IContentDescription.BYTE_ORDER_MARK);
+				if (bom != null) {
+					bomLength= bom.length;
+				}
+			}
+			
+			if (progress.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			try (final FileChannel channel= FileChannel.open(location.toFile().toPath(), StandardOpenOption.READ)) {
+				final long size= channel.size() - bomLength;
+				if (size < 0 || size > Integer.MAX_VALUE - 16) {
+					return null;
+				}
+				final CharsetDecoder decoder= charset.newDecoder()
+						.onMalformedInput(CodingErrorAction.REPLACE)
+						.onUnmappableCharacter(CodingErrorAction.REPLACE);
+				final double maxChars= Math.ceil(size * (double) decoder.maxCharsPerByte());
+				if (maxChars >= Integer.MAX_VALUE - 16) {
+					return null;
+				}
+				
+				final ByteBuffer bytes= ByteBuffer.allocate((int) size);
+				channel.position(bomLength);
+				while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+				}
+				bytes.flip();
+				
+				final CharBuffer chars= CharBuffer.allocate((int) maxChars + 16);
+				if (decoder.decode(bytes, chars, true).isOverflow()
+						|| decoder.flush(chars).isOverflow() ) {
+					return null;
+				}
+				return new String(chars.array(), 0, chars.position());
+			}
+		}
+		catch (final CoreException | IOException | IllegalArgumentException e) {
+			// fallback
+			return null;
+		}
+	}
+	
 	protected final void loadDocumentFromFile(final IFile file, final AbstractDocument document, final SubMonitor progress) {
 		try {
+			{	final String text= readFileText(file, progress);
+				if (text != null) {
+					document.set(text, file.getModificationStamp());
+					return;
+				}
+			}
 			FileUtil.getFileUtil(file).createReadTextFileOp(new FileUtil.ReaderAction() {
 				@Override
 				public void run(final BufferedReader reader, final IProgressMonitor monitor) throws IOException {
@@ -310,6 +444,12 @@ public class WorkingBuffer implements IWorkingBuffer {
 	
 	protected final void loadContentFromFile(final IFile file, final AtomicReference<SourceContent> content, final SubMonitor progress) {
 		try {
+			{	final String text= readFileText(file, progress);
+				if (text != null) {
+					content.set(new SourceContent(file.getModificationStamp(), text));
+					return;
+				}
+			}
 			FileUtil.getFileUtil(file).createReadTextFileOp(new FileUtil.ReaderAction() {
 				@Override
 				public void run(final BufferedReader reader, final IProgressMonitor monitor) throws IOException {
@@ -0,0 +1,609 @@
+/*=============================================================================#
+ # Copyright (c) 2016 Stephan Wahlbrink (WalWare.de) and others.
+ # All rights reserved. This program and the accompanying materials
+ # are made available under the terms of the Eclipse Public License v1.0
+ # which accompanies this distribution, and is available at
+ # http://www.eclipse.org/legal/epl-v10.html
+ # 
+ # Contributors:
+ #     Stephan Wahlbrink - initial API and implementation
+ #=============================================================================*/
+
+package de.walware.ecommons.ltk.core.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import de.walware.jcommons.collections.ImCollections;
+import de.walware.jcommons.collections.ImList;
+
+import de.walware.ecommons.ltk.LTK;
+import de.walware.ecommons.ltk.ast.IAstNode;
+import de.walware.ecommons.ltk.core.model.INameAccess;
+import de.walware.ecommons.ltk.core.model.INameAccessSet;
+import de.walware.ecommons.ltk.internal.core.LTKCorePlugin;
+
+
+/**
+ * Inverted index of the names accessed in source units (name &rarr; source units and offsets).
+ * <p>
+ * The index is updated per source unit by {@link #update(String, long, INameAccessSet)},
+ * usually by an {@link AbstractModelEventJob} ({@link AbstractModelEventJob#setNameIndex(WorkspaceNameIndex)}).
+ * Source units are identified by a key, usually the path of the resource.</p>
+ * <p>
+ * The names are distributed to shards by their hash code. Updates are serialized and lock
+ * only the shards of the changed names for the replacement of their (immutable) entries;
+ * queries never wait for an update of the whole source unit. The internal ids of removed
+ * source units are reused for new ones. The index can be saved to and loaded from a file.</p>
+ */
+public class WorkspaceNameIndex {
+	
+	
+	private static final int MAGIC= 0x4C544B4E; // LTKN
+	private static final int FORMAT_VERSION= 1;
+	
+	private static final int SHARD_COUNT= 16;
+	
+	private static final int[] NO_INTS= new int[0];
+	private static final int[][] NO_OFFSETS= new int[0][];
+	
+	
+	/**
+	 * Accesses of a name in a source unit.
+	 */
+	public static final class Match {
+		
+		private final String unitKey;
+		private final int[] offsets;
+		
+		private Match(final String unitKey, final int[] offsets) {
+			this.unitKey= unitKey;
+			this.offsets= offsets;
+		}
+		
+		
+		/**
+		 * Returns the key of the source unit.
+		 * 
+		 * @return the key
+		 */
+		public String getUnitKey() {
+			return this.unitKey;
+		}
+		
+		/**
+		 * Returns the offsets of the name accesses in the source unit.
+		 * 
+		 * @return sorted array of the offsets (must not be modified)
+		 */
+		public int[] getOffsets() {
+			return this.offsets;
+		}
+		
+	}
+	
+	/**
+	 * Immutable postings of a name, sorted by unit id.
+	 */
+	private static final class NameEntry {
+		
+		private final int[] unitIds;
+		private final int[][] offsets;
+		
+		public NameEntry(final int[] unitIds, final int[][] offsets) {
+			this.unitIds= unitIds;
+			this.offsets= offsets;
+		}
+		
+		public NameEntry with(final int unitId, final int[] unitOffsets) {
+			final int idx= Arrays.binarySearch(this.unitIds, unitId);
+			if (idx >= 0) {
+				final int[][] offsets= this.offsets.clone();
+				offsets[idx]= unitOffsets;
+				return new NameEntry(this.unitIds, offsets);
+			}
+			final int insert= -(idx + 1);
+			final int length= this.unitIds.length;
+			final int[] unitIds= new int[length + 1];
+			final int[][] offsets= new int[length + 1][];
+			System.arraycopy(this.unitIds, 0, unitIds, 0, insert);
+			System.arraycopy(this.offsets, 0, offsets, 0, insert);
+			unitIds[insert]= unitId;
+			offsets[insert]= unitOffsets;
+			System.arraycopy(this.unitIds, insert, unitIds, insert + 1, length - insert);
+			System.arraycopy(this.offsets, insert, offsets, insert + 1, length - insert);
+			return new NameEntry(unitIds, offsets);
+		}
+		
+		public NameEntry without(final int unitId) {
+			final int idx= Arrays.binarySearch(this.unitIds, unitId);
+			if (idx < 0) {
+				return this;
+			}
+			final int length= this.unitIds.length - 1;
+			if (length == 0) {
+				return null;
+			}
+			final int[] unitIds= new int[length];
+			final int[][] offsets= new int[length][];
+			System.arraycopy(this.unitIds, 0, unitIds, 0, idx);
+			System.arraycopy(this.offsets, 0, offsets, 0, idx);
+			System.arraycopy(this.unitIds, idx + 1, unitIds, idx, length - idx);
+			System.arraycopy(this.offsets, idx + 1, offsets, idx, length - idx);
+			return new NameEntry(unitIds, offsets);
+		}
+		
+		public int[] getOffsets(final int unitId) {
+			final int idx= Arrays.binarySearch(this.unitIds, unitId);
+			return (idx >= 0) ? this.offsets[idx] : NO_INTS;
+		}
+		
+	}
+	
+	private static final NameEntry EMPTY_ENTRY= new NameEntry(NO_INTS, NO_OFFSETS);
+	
+	private static final class Shard {
+		
+		private final ReentrantReadWriteLock lock= new ReentrantReadWriteLock();
+		
+		private final Map<String, NameEntry> names= new HashMap<>();
+		
+	}
+	
+	private static final class UnitEntry {
+		
+		private final int id;
+		private final long stamp;
+		private final String[] names;
+		
+		public UnitEntry(final int id, final long stamp, final String[] names) {
+			this.id= id;
+			this.stamp= stamp;
+			this.names= names;
+		}
+		
+	}
+	
+	
+	private final Shard[] shards;
+	
+	/** Lock for updates of the index */
+	private final Object updateLock= new Object();
+	
+	private final Map<String, UnitEntry> units= new ConcurrentHashMap<>();
+	/** Unit keys by unit id (republished after each change) */
+	private volatile String[] unitKeys= new String[16];
+	private int nextUnitId;
+	/** Ids of removed units, reused for new units */
+	private int[] freeUnitIds= NO_INTS;
+	private int freeUnitIdCount;
+	
+	
+	public WorkspaceNameIndex() {
+		this.shards= new Shard[SHARD_COUNT];
+		for (int i= 0; i < SHARD_COUNT; i++) {
+			this.shards[i]= new Shard();
+		}
+	}
+	
+	
+	private static int getShardIdx(final String name) {
+		final int h= name.hashCode();
+		return (h ^ (h >>> 16)) & (SHARD_COUNT - 1);
+	}
+	
+	private Shard getShard(final String name) {
+		return this.shards[getShardIdx(name)];
+	}
+	
+	
+	/**
+	 * Updates the accesses of a source unit.
+	 * 
+	 * @param unitKey the key of the source unit
+	 * @param stamp the stamp of the model (e.g. the modification stamp of the resource)
+	 * @param nameAccessSet the name accesses or <code>null</code> to remove the source unit
+	 */
+	public void update(final String unitKey, final long stamp,
+			final INameAccessSet<?> nameAccessSet) {
+		if (nameAccessSet == null) {
+			remove(unitKey);
+			return;
+		}
+		final ImList<String> names= nameAccessSet.getNames();
+		final Map<String, int[]> offsets= new HashMap<>(names.size());
+		for (final String name : names) {
+			if (name == null) {
+				continue;
+			}
+			final ImList<? extends INameAccess<?, ?>> accesses= nameAccessSet.getAllInUnit(name);
+			if (accesses != null && !accesses.isEmpty()) {
+				offsets.put(name, getOffsets(accesses));
+			}
+		}
+		synchronized (this.updateLock) {
+			doUpdate(unitKey, stamp, offsets);
+		}
+	}
+	
+	private static int[] getOffsets(final List<? extends INameAccess<?, ?>> accesses) {
+		final int[] offsets= new int[accesses.size()];
+		int count= 0;
+		for (final INameAccess<?, ?> access : accesses) {
+			IAstNode node= access.getNameNode();
+			if (node == null) {
+				node= access.getNode();
+			}
+			if (node != null) {
+				offsets[count++]= node.getOffset();
+			}
+		}
+		final int[] result= (count == offsets.length) ? offsets : Arrays.copyOf(offsets, count);
+		Arrays.sort(result);
+		return result;
+	}
+	
+	/**
+	 * Removes a source unit from the index.
+	 * 
+	 * @param unitKey the key of the source unit
+	 */
+	public void remove(final String unitKey) {
+		synchronized (this.updateLock) {
+			final UnitEntry oldUnit= this.units.remove(unitKey);
+			if (oldUnit != null) {
+				updateShards(oldUnit, null, Collections.<String, int[]>emptyMap());
+				final String[] unitKeys= this.unitKeys;
+				unitKeys[oldUnit.id]= null;
+				this.unitKeys= unitKeys;
+				// the id is no longer used in any shard
+				if (this.freeUnitIdCount == this.freeUnitIds.length) {
+					this.freeUnitIds= Arrays.copyOf(this.freeUnitIds,
+							Math.max(16, this.freeUnitIds.length * 2) );
+				}
+				this.freeUnitIds[this.freeUnitIdCount++]= oldUnit.id;
+			}
+		}
+	}
+	
+	/**
+	 * Removes all source units.
+	 */
+	public void clear() {
+		synchronized (this.updateLock) {
+			for (final Shard shard : this.shards) {
+				shard.lock.writeLock().lock();
+				try {
+					shard.names.clear();
+				}
+				finally {
+					shard.lock.writeLock().unlock();
+				}
+			}
+			this.units.clear();
+			this.unitKeys= new String[16];
+			this.nextUnitId= 0;
+			this.freeUnitIds= NO_INTS;
+			this.freeUnitIdCount= 0;
+		}
+	}
+	
+	private void doUpdate(final String unitKey, final long stamp, final Map<String, int[]> offsets) {
+		final UnitEntry oldUnit= this.units.get(unitKey);
+		final int id;
+		if (oldUnit != null) {
+			id= oldUnit.id;
+		}
+		else {
+			id= (this.freeUnitIdCount > 0) ?
+					this.freeUnitIds[--this.freeUnitIdCount] : this.nextUnitId++;
+			String[] unitKeys= this.unitKeys;
+			if (id >= unitKeys.length) {
+				unitKeys= Arrays.copyOf(unitKeys, unitKeys.length * 2);
+			}
+			unitKeys[id]= unitKey;
+			this.unitKeys= unitKeys;
+		}
+		final UnitEntry newUnit= new UnitEntry(id, stamp,
+				offsets.keySet().toArray(new String[offsets.size()]) );
+		updateShards(oldUnit, newUnit, offsets);
+		this.units.put(unitKey, newUnit);
+	}
+	
+	private void updateShards(final UnitEntry oldUnit, final UnitEntry newUnit,
+			final Map<String, int[]> offsets) {
+		final int id= (newUnit != null) ? newUnit.id : oldUnit.id;
+		@SuppressWarnings("unchecked")
+		final List<String>[] shardNames= new List[SHARD_COUNT];
+		final Set<String> removed= new HashSet<>();
+		if (oldUnit != null) {
+			for (final String name : oldUnit.names) {
+				if (!offsets.containsKey(name)) {
+					removed.add(name);
+					addShardName(shardNames, name);
+				}
+			}
+		}
+		if (newUnit != null) {
+			for (final String name : newUnit.names) {
+				addShardName(shardNames, name);
+			}
+		}
+		for (int i= 0; i < SHARD_COUNT; i++) {
+			final List<String> names= shardNames[i];
+			if (names == null) {
+				continue;
+			}
+			final Shard shard= this.shards[i];
+			shard.lock.writeLock().lock();
+			try {
+				for (final String name : names) {
+					final NameEntry entry= shard.names.get(name);
+					if (removed.contains(name)) {
+						if (entry != null) {
+							final NameEntry newEntry= entry.without(id);
+							if (newEntry != null) {
+								shard.names.put(name, newEntry);
+							}
+							else {
+								shard.names.remove(name);
+							}
+						}
+					}
+					else {
+						shard.names.put(name, ((entry != null) ? entry : EMPTY_ENTRY)
+								.with(id, offsets.get(name)) );
+					}
+				}
+			}
+			finally {
+				shard.lock.writeLock().unlock();
+			}
+		}
+	}
+	
+	private static void addShardName(final List<String>[] shardNames, final String name) {
+		final int idx= getShardIdx(name);
+		List<String> names= shardNames[idx];
+		if (names == null) {
+			names= new ArrayList<>();
+			shardNames[idx]= names;
+		}
+		names.add(name);
+	}
+	
+	
+	/**
+	 * Returns the accesses of the specified name in all source units.
+	 * 
+	 * @param name the name
+	 * @return list with a match for each source unit accessing the name
+	 */
+	public ImList<Match> getMatches(final String name) {
+		final Match[] matches;
+		int count= 0;
+		final Shard shard= getShard(name);
+		shard.lock.readLock().lock();
+		try {
+			final NameEntry entry= shard.names.get(name);
+			if (entry == null) {
+				return ImCollections.emptyList();
+			}
+			// resolve the ids in the lock, ids of removed units are reused
+			final String[] unitKeys= this.unitKeys;
+			matches= new Match[entry.unitIds.length];
+			for (int i= 0; i < entry.unitIds.length; i++) {
+				final int id= entry.unitIds[i];
+				if (id < unitKeys.length && unitKeys[id] != null) {
+					matches[count++]= new Match(unitKeys[id], entry.offsets[i]);
+				}
+			}
+		}
+		finally {
+			shard.lock.readLock().unlock();
+		}
+		return ImCollections.newList((count == matches.length) ? matches : Arrays.copyOf(matches, count));
+	}
+	
+	/**
+	 * Returns the keys of the source units accessing the specified name.
+	 * 
+	 * @param name the name
+	 * @return list with the keys of the source units
+	 */
+	public ImList<String> getUnitKeys(final String name) {
+		final String[] keys;
+		int count= 0;
+		final Shard shard= getShard(name);
+		shard.lock.readLock().lock();
+		try {
+			final NameEntry entry= shard.names.get(name);
+			if (entry == null) {
+				return ImCollections.emptyList();
+			}
+			// resolve the ids in the lock, ids of removed units are reused
+			final String[] unitKeys= this.unitKeys;
+			keys= new String[entry.unitIds.length];
+			for (int i= 0; i < entry.unitIds.length; i++) {
+				final int id= entry.unitIds[i];
+				if (id < unitKeys.length && unitKeys[id] != null) {
+					keys[count++]= unitKeys[id];
+				}
+			}
+		}
+		finally {
+			shard.lock.readLock().unlock();
+		}
+		return ImCollections.newList((count == keys.length) ? keys : Arrays.copyOf(keys, count));
+	}
+	
+	/**
+	 * Returns all indexed names starting with the specified prefix.
+	 * 
+	 * @param prefix the prefix
+	 * @return sorted list of the names
+	 */
+	public ImList<String> getNamesWithPrefix(final String prefix) {
+		final List<String> names= new ArrayList<>();
+		for (final Shard shard : this.shards) {
+			shard.lock.readLock().lock();
+			try {
+				for (final String name : shard.names.keySet()) {
+					if (name.startsWith(prefix)) {
+						names.add(name);
+					}
+				}
+			}
+			finally {
+				shard.lock.readLock().unlock();
+			}
+		}
+		final String[] array= names.toArray(new String[names.size()]);
+		Arrays.sort(array);
+		return ImCollections.newList(array);
+	}
+	
+	/**
+	 * Returns the number of indexed source units.
+	 * 
+	 * @return the number of source units
+	 */
+	public int getUnitCount() {
+		return this.units.size();
+	}
+	
+	/**
+	 * Returns the stamp of the indexed model of the specified source unit.
+	 * 
+	 * @param unitKey the key of the source unit
+	 * @return the stamp or <code>0</code> if the source unit is not indexed
+	 */
+	public long getUnitStamp(final String unitKey) {
+		final UnitEntry unit= this.units.get(unitKey);
+		return (unit != null) ? unit.stamp : 0;
+	}
+	
+	
+	/**
+	 * Saves the index to the specified file.
+	 * 
+	 * @param file the file
+	 * @throws IOException
+	 */
+	public void save(final Path file) throws IOException {
+		final Path tempFile= Files.createTempFile(file.toAbsolutePath().getParent(), null, ".tmp"); //$NON-NLS-1$
+		try {
+			try (final DataOutputStream out= new DataOutputStream(new BufferedOutputStream(
+					Files.newOutputStream(tempFile) ))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				synchronized (this.updateLock) {
+					out.writeInt(this.units.size());
+					for (final Map.Entry<String, UnitEntry> unitEntry : this.units.entrySet()) {
+						final UnitEntry unit= unitEntry.getValue();
+						out.writeUTF(unitEntry.getKey());
+						out.writeLong(unit.stamp);
+						out.writeInt(unit.names.length);
+						for (final String name : unit.names) {
+							final NameEntry entry= getShard(name).names.get(name);
+							final int[] offsets= (entry != null) ? entry.getOffsets(unit.id) : NO_INTS;
+							out.writeUTF(name);
+							out.writeInt(offsets.length);
+							for (final int offset : offsets) {
+								out.writeInt(offset);
+							}
+						}
+					}
+				}
+			}
+			try {
+				Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE );
+			}
+			catch (final AtomicMoveNotSupportedException e) {
+				Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+	
+	/**
+	 * Replaces the content of the index by the index saved in the specified file.
+	 * <p>
+	 * If the file is invalid, the index is cleared.</p>
+	 * 
+	 * @param file the file
+	 * @return <code>true</code> if the index was loaded, otherwise <code>false</code>
+	 */
+	public boolean load(final Path file) {
+		synchronized (this.updateLock) {
+			clear();
+			if (!Files.isRegularFile(file)) {
+				return false;
+			}
+			try (final DataInputStream in= new DataInputStream(new BufferedInputStream(
+					Files.newInputStream(file) ))) {
+				if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+					return false;
+				}
+				final long fileSize= Files.size(file);
+				final int unitCount= readCount(in, fileSize);
+				for (int i= 0; i < unitCount; i++) {
+					final String unitKey= in.readUTF();
+					final long stamp= in.readLong();
+					final int nameCount= readCount(in, fileSize);
+					final Map<String, int[]> offsets= new HashMap<>(nameCount);
+					for (int j= 0; j < nameCount; j++) {
+						final String name= in.readUTF();
+						final int offsetCount= readCount(in, fileSize);
+						final int[] nameOffsets= new int[offsetCount];
+						for (int k= 0; k < offsetCount; k++) {
+							nameOffsets[k]= in.readInt();
+						}
+						offsets.put(name, nameOffsets);
+					}
+					doUpdate(unitKey, stamp, offsets);
+				}
+				return true;
+			}
+			catch (final IOException | RuntimeException e) {
+				clear();
+				LTKCorePlugin.log(new Status(IStatus.WARNING, LTK.PLUGIN_ID, -1,
+						"The saved name index is invalid and was discarded.", //$NON-NLS-1$
+						e ));
+				return false;
+			}
+		}
+	}
+	
+	private static int readCount(final DataInputStream in, final long fileSize) throws IOException {
+		final int count= in.readInt();
+		if (count < 0 || count > fileSize) {
+			throw new IOException("Invalid count: " + count); //$NON-NLS-1$
+		}
+		return count;
+	}
+	
+}
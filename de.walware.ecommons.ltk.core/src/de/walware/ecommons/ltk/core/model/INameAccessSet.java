@@ -11,6 +11,10 @@
 
 package de.walware.ecommons.ltk.core.model;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import de.walware.jcommons.collections.ImCollections;
 import de.walware.jcommons.collections.ImList;
 
 
@@ -24,8 +28,47 @@ import de.walware.jcommons.collections.ImList;
 public interface INameAccessSet<TNameAccess extends INameAccess<?, TNameAccess>> {
 	
 	
+	/**
+	 * Returns all names, sorted by {@link String#compareTo(String)}.
+	 * 
+	 * @return list of the names
+	 */
 	ImList<String> getNames();
 	
+	/**
+	 * Returns the names starting with the specified prefix.
+	 * 
+	 * @param prefix the prefix
+	 * @return sorted list of the names
+	 */
+	default ImList<String> getNamesWithPrefix(final String prefix) {
+		final List<String> names= new ArrayList<>();
+		for (final String name : getNames()) {
+			if (name.startsWith(prefix)) {
+				names.add(name);
+			}
+		}
+		return ImCollections.toList(names);
+	}
+	
+	/**
+	 * Returns the names in the specified range.
+	 * 
+	 * @param fromName the lower bound (inclusive) or <code>null</code> for no lower bound
+	 * @param toName the upper bound (exclusive) or <code>null</code> for no upper bound
+	 * @return sorted list of the names
+	 */
+	default ImList<String> getNamesInRange(final String fromName, final String toName) {
+		final List<String> names= new ArrayList<>();
+		for (final String name : getNames()) {
+			if ((fromName == null || name.compareTo(fromName) >= 0)
+					&& (toName == null || name.compareTo(toName) < 0) ) {
+				names.add(name);
+			}
+		}
+		return ImCollections.toList(names);
+	}
+	
 	ImList<TNameAccess> getAllInUnit(String label);
 	
 }
@@ -0,0 +1,306 @@
+/*=============================================================================#
+ # Copyright (c) 2016 Stephan Wahlbrink (WalWare.de) and others.
+ # All rights reserved. This program and the accompanying materials
+ # are made available under the terms of the Eclipse Public License v1.0
+ # which accompanies this distribution, and is available at
+ # http://www.eclipse.org/legal/epl-v10.html
+ # 
+ # Contributors:
+ #     Stephan Wahlbrink - initial API and implementation
+ #=============================================================================*/
+
+package de.walware.ecommons.ltk.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.text.IRegion;
+
+import de.walware.ecommons.ltk.LTKUtil;
+import de.walware.ecommons.ltk.core.model.ISourceStructElement;
+import de.walware.ecommons.ltk.core.model.ISourceUnitModelInfo;
+
+
+/**
+ * Index of the source structure elements of a model for lookup by offset.
+ * <p>
+ * The index is created once for a model info and stored as its attachment
+ * ({@link #get(ISourceUnitModelInfo)}). For each element the children are stored with their
+ * start offsets and the prefix maximum of their end offsets, so a lookup needs a binary
+ * search per level instead of iterating all children.</p>
+ * <p>
+ * The range of an element includes its documentation range, like in
+ * {@link LTKUtil#getCoveringSourceElement(ISourceStructElement, int, int)}.</p>
+ */
+public class SourceStructElementIndex {
+	
+	
+	private static final Node[] NO_CHILDREN= new Node[0];
+	
+	private static final class Node {
+		
+		private final ISourceStructElement element;
+		
+		private final int startOffset;
+		private final int endOffset;
+		
+		private Node[] children;
+		/** Start offsets of children */
+		private int[] childStarts;
+		/** Maximum of the end offsets of children 0..i */
+		private int[] childMaxEnds;
+		/** If children are sorted by start offset */
+		private boolean sorted;
+		
+		public Node(final ISourceStructElement element, final int startOffset, final int endOffset) {
+			this.element= element;
+			this.startOffset= startOffset;
+			this.endOffset= endOffset;
+		}
+		
+	}
+	
+	
+	/**
+	 * Returns the index for the specified model info.
+	 * <p>
+	 * The index is created if it doesn't yet exists.</p>
+	 * 
+	 * @param modelInfo the model info
+	 * @return the index
+	 */
+	public static SourceStructElementIndex get(final ISourceUnitModelInfo modelInfo) {
+		SourceStructElementIndex index= find(modelInfo);
+		if (index == null) {
+			index= new SourceStructElementIndex(modelInfo.getSourceElement());
+			synchronized (modelInfo) {
+				final SourceStructElementIndex existing= find(modelInfo);
+				if (existing != null) {
+					return existing;
+				}
+				modelInfo.addAttachment(index);
+			}
+		}
+		return index;
+	}
+	
+	private static SourceStructElementIndex find(final ISourceUnitModelInfo modelInfo) {
+		for (final Object attachment : modelInfo.getAttachments()) {
+			if (attachment instanceof SourceStructElementIndex) {
+				return (SourceStructElementIndex) attachment;
+			}
+		}
+		return null;
+	}
+	
+	
+	private final Node root;
+	
+	private int size;
+	
+	
+	public SourceStructElementIndex(final ISourceStructElement root) {
+		this.root= new Node(root, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		addChildren(this.root);
+	}
+	
+	
+	private void addChildren(final Node node) {
+		final List<? extends ISourceStructElement> children= node.element.getSourceChildren(null);
+		final int count= children.size();
+		if (count == 0) {
+			node.children= NO_CHILDREN;
+			node.sorted= true;
+			return;
+		}
+		node.children= new Node[count];
+		node.childStarts= new int[count];
+		node.childMaxEnds= new int[count];
+		node.sorted= true;
+		int maxEnd= Integer.MIN_VALUE;
+		for (int i= 0; i < count; i++) {
+			final ISourceStructElement child= children.get(i);
+			final IRegion sourceRange= child.getSourceRange();
+			final IRegion docRange= child.getDocumentationRange();
+			final int childStart= (docRange != null) ?
+					Math.min(sourceRange.getOffset(), docRange.getOffset()) :
+					sourceRange.getOffset();
+			final int childEnd= (docRange != null) ?
+					Math.max(sourceRange.getOffset() + sourceRange.getLength(), docRange.getOffset() + docRange.getLength()) :
+					sourceRange.getOffset() + sourceRange.getLength();
+			final Node childNode= new Node(child, childStart, childEnd);
+			node.children[i]= childNode;
+			node.childStarts[i]= childStart;
+			if (childEnd > maxEnd) {
+				maxEnd= childEnd;
+			}
+			node.childMaxEnds[i]= maxEnd;
+			if (i > 0 && childStart < node.childStarts[i - 1]) {
+				node.sorted= false;
+			}
+			this.size++;
+			addChildren(childNode);
+		}
+	}
+	
+	
+	/**
+	 * Returns the number of indexed elements (without the root element).
+	 * 
+	 * @return the number of elements
+	 */
+	public int getSize() {
+		return this.size;
+	}
+	
+	/**
+	 * Returns the innermost element covering the specified range.
+	 * <p>
+	 * The result is identical to
+	 * {@link LTKUtil#getCoveringSourceElement(ISourceStructElement, int, int)} for the root
+	 * element of the index.</p>
+	 * 
+	 * @param startOffset start offset of the range
+	 * @param endOffset end offset of the range (exclusive)
+	 * @return the covering element, the root element if no other element covers the range
+	 */
+	public ISourceStructElement getCoveringElement(final int startOffset, final int endOffset) {
+		Node node= this.root;
+		while (true) {
+			final Node child= getCoveringChild(node, startOffset, endOffset);
+			if (child == null) {
+				return node.element;
+			}
+			node= child;
+		}
+	}
+	
+	private Node getCoveringChild(final Node node, final int startOffset, final int endOffset) {
+		final Node[] children= node.children;
+		if (children.length == 0) {
+			return null;
+		}
+		if (!node.sorted) {
+			for (final Node child : children) {
+				if (startOffset >= child.startOffset) {
+					if (covers(child.endOffset, startOffset, endOffset)) {
+						return child;
+					}
+				}
+				else {
+					return null;
+				}
+			}
+			return null;
+		}
+		// children starting at or before startOffset: [0, limit)
+		final int limit= upperBound(node.childStarts, startOffset);
+		if (limit == 0) {
+			return null;
+		}
+		// first child covering the range (childMaxEnds is monotonic)
+		final int[] maxEnds= node.childMaxEnds;
+		int low= 0;
+		int high= limit - 1;
+		if (!covers(maxEnds[high], startOffset, endOffset)) {
+			return null;
+		}
+		while (low < high) {
+			final int mid= (low + high) >>> 1;
+			if (covers(maxEnds[mid], startOffset, endOffset)) {
+				high= mid;
+			}
+			else {
+				low= mid + 1;
+			}
+		}
+		return children[low];
+	}
+	
+	private static boolean covers(final int childEnd, final int startOffset, final int endOffset) {
+		return (startOffset < endOffset) ? (endOffset <= childEnd) : (endOffset < childEnd);
+	}
+	
+	/**
+	 * Returns all elements overlapping the specified range, in pre-order of the source tree.
+	 * <p>
+	 * For an empty range, the elements containing the offset are returned.</p>
+	 * 
+	 * @param startOffset start offset of the range
+	 * @param endOffset end offset of the range (exclusive)
+	 * @return list with the elements (without the root element)
+	 */
+	public List<ISourceStructElement> getOverlappingElements(final int startOffset, final int endOffset) {
+		final List<ISourceStructElement> elements= new ArrayList<>();
+		collectOverlapping(this.root, startOffset, endOffset, elements);
+		return elements;
+	}
+	
+	private void collectOverlapping(final Node node, final int startOffset, final int endOffset,
+			final List<ISourceStructElement> elements) {
+		final Node[] children= node.children;
+		if (children.length == 0) {
+			return;
+		}
+		int from= 0;
+		int limit= children.length;
+		if (node.sorted) {
+			// children starting before the end of the range
+			limit= (startOffset < endOffset) ?
+					lowerBound(node.childStarts, endOffset) :
+					upperBound(node.childStarts, startOffset);
+			// skip children ending before the range
+			from= upperBound(node.childMaxEnds, startOffset);
+		}
+		for (int i= from; i < limit; i++) {
+			final Node child= children[i];
+			if (overlaps(child, startOffset, endOffset)) {
+				elements.add(child.element);
+				collectOverlapping(child, startOffset, endOffset, elements);
+			}
+		}
+	}
+	
+	private static boolean overlaps(final Node node, final int startOffset, final int endOffset) {
+		return (startOffset < endOffset) ?
+				(node.startOffset < endOffset && node.endOffset > startOffset) :
+				(node.startOffset <= startOffset && node.endOffset > startOffset);
+	}
+	
+	/**
+	 * Returns the index of the first value > key.
+	 */
+	private static int upperBound(final int[] values, final int key) {
+		int low= 0;
+		int high= values.length;
+		while (low < high) {
+			final int mid= (low + high) >>> 1;
+			if (values[mid] <= key) {
+				low= mid + 1;
+			}
+			else {
+				high= mid;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * Returns the index of the first value >= key.
+	 */
+	private static int lowerBound(final int[] values, final int key) {
+		int low= 0;
+		int high= values.length;
+		while (low < high) {
+			final int mid= (low + high) >>> 1;
+			if (values[mid] < key) {
+				low= mid + 1;
+			}
+			else {
+				high= mid;
+			}
+		}
+		return low;
+	}
+	
+}
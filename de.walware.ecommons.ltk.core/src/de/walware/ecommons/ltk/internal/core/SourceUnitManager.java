@@ -18,8 +18,16 @@ import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileStore;
@@ -42,6 +50,7 @@ import de.walware.ecommons.ICommonStatusConstants;
 import de.walware.ecommons.IDisposable;
 
 import de.walware.ecommons.ltk.IExtContentTypeManager;
+import de.walware.ecommons.ltk.ISourceUnitCacheStatistics;
 import de.walware.ecommons.ltk.ISourceUnitFactory;
 import de.walware.ecommons.ltk.ISourceUnitManager;
 import de.walware.ecommons.ltk.LTK;
@@ -56,14 +65,54 @@ public class SourceUnitManager implements ISourceUnitManager, IDisposable {
 	
 	private static final String CONFIG_MODELTYPE_ID_ATTRIBUTE_NAME= "modelTypeId"; //$NON-NLS-1$
 	private static final String CONFIG_CONTEXT_KEY_ATTRIBUTE_NAME= "contextKey"; //$NON-NLS-1$
+	private static final String CONFIG_RETENTION_ATTRIBUTE_NAME= "retention"; //$NON-NLS-1$
+	private static final String CONFIG_RETENTION_SIZE_ATTRIBUTE_NAME= "retentionSize"; //$NON-NLS-1$
+	
+	private static final int DEFAULT_RETENTION_SIZE= 200;
+	
+	
+	/**
+	 * Policy which source units are kept strongly referenced in addition to the soft references.
+	 */
+	private static enum RetentionMode {
+		
+		/** Only soft references */
+		SOFT,
+		/** Least recently used units are released first */
+		LRU,
+		/** Least frequently used units are released first */
+		LFU;
+		
+	}
+	
+	private static final Comparator<SuItem> LRU_COMPARATOR= new Comparator<SuItem>() {
+		@Override
+		public int compare(final SuItem item1, final SuItem item2) {
+			return Long.compare(item1.lastAccess, item2.lastAccess);
+		}
+	};
+	
+	private static final Comparator<SuItem> LFU_COMPARATOR= new Comparator<SuItem>() {
+		@Override
+		public int compare(final SuItem item1, final SuItem item2) {
+			final int diff= Integer.compare(item1.accessCount.get(), item2.accessCount.get());
+			return (diff != 0) ? diff : Long.compare(item1.lastAccess, item2.lastAccess);
+		}
+	};
 	
 	
 	private static final class SuItem extends SoftReference<ISourceUnit> {
 		
 		private final String key;
 		
+		/** Strong reference, if retained by the retention policy */
+		private volatile ISourceUnit retained;
+		
+		private volatile long lastAccess;
+		private final AtomicInteger accessCount= new AtomicInteger();
+		
 		public SuItem(final String key, final ISourceUnit su, final ReferenceQueue<ISourceUnit> queue) {
-			super(su);
+			super(su, queue);
 			this.key= key;
 		}
 		
@@ -71,6 +120,11 @@ public class SourceUnitManager implements ISourceUnitManager, IDisposable {
 			return this.key;
 		}
 		
+		public ISourceUnit getValid() {
+			final ISourceUnit su= get();
+			return (su != null && !isEnqueued()) ? su : null;
+		}
+		
 		public void dispose() {
 			final ISourceUnit su= get();
 			if (su != null && su.isConnected()) {
@@ -83,18 +137,103 @@ public class SourceUnitManager implements ISourceUnitManager, IDisposable {
 		
 	}
 	
+	/**
+	 * Creation of a source unit in progress. Other threads requesting the same id wait for it.
+	 */
+	private static final class SuCreation extends CompletableFuture<SuItem> {
+		
+		private final Thread thread;
+		
+		public SuCreation() {
+			this.thread= Thread.currentThread();
+		}
+		
+	}
+	
+	/**
+	 * Snapshot of the statistics of a context item.
+	 */
+	private static final class CacheStatistics implements ISourceUnitCacheStatistics {
+		
+		private final long hitCount;
+		private final long missCount;
+		private final long evictionCount;
+		private final long collectedCount;
+		private final int retainedCount;
+		private final int size;
+		
+		public CacheStatistics(final long hitCount, final long missCount,
+				final long evictionCount, final long collectedCount,
+				final int retainedCount, final int size) {
+			this.hitCount= hitCount;
+			this.missCount= missCount;
+			this.evictionCount= evictionCount;
+			this.collectedCount= collectedCount;
+			this.retainedCount= retainedCount;
+			this.size= size;
+		}
+		
+		@Override
+		public long getHitCount() {
+			return this.hitCount;
+		}
+		
+		@Override
+		public long getMissCount() {
+			return this.missCount;
+		}
+		
+		@Override
+		public long getEvictionCount() {
+			return this.evictionCount;
+		}
+		
+		@Override
+		public long getCollectedCount() {
+			return this.collectedCount;
+		}
+		
+		@Override
+		public int getRetainedCount() {
+			return this.retainedCount;
+		}
+		
+		@Override
+		public int getSize() {
+			return this.size;
+		}
+		
+	}
+	
 	private static class ContextItem {
 		
 		private final WorkingContext context;
 		private final ISourceUnitFactory factory;
-		private final HashMap<String, SuItem> sus;
+		private final ConcurrentHashMap<String, SuItem> sus;
+		private final ConcurrentHashMap<String, SuCreation> susInCreation;
 		private final ReferenceQueue<ISourceUnit> susToClean;
 		
-		public ContextItem(final WorkingContext context, final ISourceUnitFactory factory) {
+		private final RetentionMode retentionMode;
+		private final int retentionSize;
+		private final AtomicInteger retainedCount= new AtomicInteger();
+		private volatile int retainedTrimThreshold;
+		private final AtomicBoolean retainedTrimming= new AtomicBoolean();
+		
+		private final LongAdder hitCount= new LongAdder();
+		private final LongAdder missCount= new LongAdder();
+		private final LongAdder evictionCount= new LongAdder();
+		private final LongAdder collectedCount= new LongAdder();
+		
+		public ContextItem(final WorkingContext context, final ISourceUnitFactory factory,
+				final RetentionMode retentionMode, final int retentionSize) {
 			this.context= context;
 			this.factory= factory;
-			this.sus= new HashMap<>();
+			this.sus= new ConcurrentHashMap<>();
+			this.susInCreation= new ConcurrentHashMap<>();
 			this.susToClean= new ReferenceQueue<>();
+			this.retentionMode= retentionMode;
+			this.retentionSize= retentionSize;
+			this.retainedTrimThreshold= retentionSize;
 		}
 		
 		@Override
@@ -111,31 +250,199 @@ public class SourceUnitManager implements ISourceUnitManager, IDisposable {
 		}
 		
 		
-		public synchronized ISourceUnit getOpenSu(final Object from) {
+		public ISourceUnit getOpenSu(final Object from) {
 			final String id= this.factory.createId(from);
 			if (id != null) {
 				final SuItem suItem= this.sus.get(id);
 				if (suItem != null) {
-					final ISourceUnit su= suItem.get();
-					if (su != null && !suItem.isEnqueued()) {
-						return su;
-					}
+					return suItem.getValid();
 				}
 			}
 			return null;
 		}
 		
-		public synchronized void appendOpenSus(final ArrayList<ISourceUnit> list) {
+		public void appendOpenSus(final ArrayList<ISourceUnit> list) {
 			final Collection<SuItem> suItems= this.sus.values();
 			list.ensureCapacity(list.size() + suItems.size());
 			for (final SuItem suItem : suItems) {
-				final ISourceUnit su= suItem.get();
-				if (su != null && !suItem.isEnqueued()) {
+				final ISourceUnit su= suItem.getValid();
+				if (su != null) {
 					list.add(su);
 				}
 			}
 		}
 		
+		/**
+		 * Returns the source unit for the specified id, creates it if requested.
+		 * 
+		 * Lookups don't lock; the factory is called without holding any lock shared by other ids.
+		 * Concurrent requests creating the same id wait for the first one.
+		 */
+		public ISourceUnit getSu(final String modelTypeId, final String id, final Object from,
+				final boolean create) {
+			while (true) {
+				final SuItem suItem= this.sus.get(id);
+				if (suItem != null) {
+					final ISourceUnit su= suItem.getValid();
+					if (su != null) {
+						this.hitCount.increment();
+						retain(suItem, su);
+						return su;
+					}
+				}
+				if (!create) {
+					this.missCount.increment();
+					return null;
+				}
+				
+				final SuCreation creation= new SuCreation();
+				final SuCreation otherCreation= this.susInCreation.putIfAbsent(id, creation);
+				if (otherCreation != null) {
+					if (otherCreation.thread == Thread.currentThread()) {
+						// recursive request while creating the unit, would create a second instance
+						throw new IllegalStateException(NLS.bind(
+								"Recursive request for source unit ''{0}'' while creating it.", //$NON-NLS-1$
+								id ));
+					}
+					final SuItem createdItem;
+					try {
+						createdItem= otherCreation.join();
+					}
+					catch (final CompletionException | CancellationException e) {
+						continue;
+					}
+					if (createdItem == null) {
+						return null;
+					}
+					final ISourceUnit su= createdItem.getValid();
+					if (su != null) {
+						this.hitCount.increment();
+						retain(createdItem, su);
+						return su;
+					}
+					continue;
+				}
+				
+				try {
+					ISourceUnit su= null;
+					SuItem newItem= this.sus.get(id);
+					if (newItem != null) {
+						su= newItem.getValid();
+					}
+					if (su == null) {
+						this.missCount.increment();
+						su= createSu(modelTypeId, id, from);
+						if (su != null) {
+							newItem= new SuItem(id, su, this.susToClean);
+							this.sus.put(id, newItem);
+						}
+						else {
+							newItem= null;
+						}
+					}
+					if (su != null) {
+						retain(newItem, su);
+					}
+					creation.complete(newItem);
+					return su;
+				}
+				catch (final RuntimeException | Error e) {
+					creation.completeExceptionally(e);
+					throw e;
+				}
+				finally {
+					this.susInCreation.remove(id, creation);
+				}
+			}
+		}
+		
+		private void retain(final SuItem suItem, final ISourceUnit su) {
+			if (this.retentionMode == RetentionMode.SOFT) {
+				return;
+			}
+			suItem.lastAccess= System.nanoTime();
+			suItem.accessCount.incrementAndGet();
+			if (suItem.retained == null) {
+				synchronized (suItem) {
+					if (suItem.retained != null) {
+						return;
+					}
+					suItem.retained= su;
+				}
+				if (this.retainedCount.incrementAndGet() > this.retainedTrimThreshold) {
+					trimRetained();
+				}
+			}
+		}
+		
+		private boolean release(final SuItem suItem) {
+			synchronized (suItem) {
+				if (suItem.retained == null) {
+					return false;
+				}
+				suItem.retained= null;
+			}
+			this.retainedCount.decrementAndGet();
+			return true;
+		}
+		
+		/**
+		 * Releases the disconnected source units exceeding the retention size according to the
+		 * retention mode. Connected units are not released because they are referenced anyway.
+		 */
+		private void trimRetained() {
+			if (!this.retainedTrimming.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				final List<SuItem> candidates= new ArrayList<>(this.retainedCount.get());
+				for (final SuItem suItem : this.sus.values()) {
+					final ISourceUnit su= suItem.retained;
+					if (su != null && !su.isConnected()) {
+						candidates.add(suItem);
+					}
+				}
+				final int toRelease= candidates.size() - (this.retentionSize - this.retentionSize / 8);
+				if (toRelease > 0) {
+					Collections.sort(candidates, (this.retentionMode == RetentionMode.LFU) ?
+							LFU_COMPARATOR : LRU_COMPARATOR );
+					for (int i= 0; i < toRelease; i++) {
+						if (release(candidates.get(i))) {
+							this.evictionCount.increment();
+						}
+					}
+				}
+			}
+			finally {
+				this.retainedTrimThreshold= Math.max(this.retentionSize,
+						this.retainedCount.get() + Math.max(this.retentionSize / 8, 1) );
+				this.retainedTrimming.set(false);
+			}
+		}
+		
+		private ISourceUnit createSu(final String modelTypeId, final String id, final Object from) {
+			final ISourceUnit su= this.factory.createSourceUnit(id, from);
+			if (su == null) {
+				return null;
+			}
+			if (!su.getModelTypeId().equals(modelTypeId)
+					|| (su.getElementType() & IModelElement.MASK_C1) != IModelElement.C1_SOURCE) {
+				LTKCorePlugin.log(new Status(IStatus.WARNING, LTKCorePlugin.PLUGIN_ID, -1,
+						NLS.bind("The source unit factory created an invalid source unit ''{0}'' for model type ''{1}''.", //$NON-NLS-1$
+								id, modelTypeId ),
+						null ));
+				return null;
+			}
+			return su;
+		}
+		
+		
+		public ISourceUnitCacheStatistics createStatistics() {
+			return new CacheStatistics(this.hitCount.sum(), this.missCount.sum(),
+					this.evictionCount.sum(), this.collectedCount.sum(),
+					this.retainedCount.get(), this.sus.size() );
+		}
+		
 	}
 	
 	private static class ModelItem {
@@ -184,7 +491,8 @@ public class SourceUnitManager implements ISourceUnitManager, IDisposable {
 						}
 						if (matchingElement != null) {
 							final ISourceUnitFactory factory= (ISourceUnitFactory) matchingElement.createExecutableExtension("unitFactory"); //$NON-NLS-1$
-							final ContextItem contextItem= new ContextItem(context, factory);
+							final ContextItem contextItem= new ContextItem(context, factory,
+									getRetentionMode(matchingElement), getRetentionSize(matchingElement) );
 							this.contextItems= ImCollections.addElement(contextItems, contextItem);
 							return contextItem;
 						}
@@ -198,6 +506,40 @@ public class SourceUnitManager implements ISourceUnitManager, IDisposable {
 			return null;
 		}
 		
+		private RetentionMode getRetentionMode(final IConfigurationElement element) {
+			final String value= element.getAttribute(CONFIG_RETENTION_ATTRIBUTE_NAME);
+			if (value != null && !value.isEmpty()) {
+				try {
+					return RetentionMode.valueOf(value.toUpperCase(Locale.ENGLISH));
+				}
+				catch (final IllegalArgumentException e) {
+					LTKCorePlugin.log(new Status(IStatus.WARNING, LTK.PLUGIN_ID, ICommonStatusConstants.INTERNAL_PLUGGED_IN,
+							NLS.bind("Invalid retention ''{0}'' for model type ''{1}''.", //$NON-NLS-1$
+									value, this.modelTypeId ),
+							null ));
+				}
+			}
+			return RetentionMode.SOFT;
+		}
+		
+		private int getRetentionSize(final IConfigurationElement element) {
+			final String value= element.getAttribute(CONFIG_RETENTION_SIZE_ATTRIBUTE_NAME);
+			if (value != null && !value.isEmpty()) {
+				try {
+					final int size= Integer.parseInt(value);
+					if (size > 0) {
+						return size;
+					}
+				}
+				catch (final NumberFormatException e) {}
+				LTKCorePlugin.log(new Status(IStatus.WARNING, LTK.PLUGIN_ID, ICommonStatusConstants.INTERNAL_PLUGGED_IN,
+						NLS.bind("Invalid retention size ''{0}'' for model type ''{1}''.", //$NON-NLS-1$
+								value, this.modelTypeId ),
+						null ));
+			}
+			return DEFAULT_RETENTION_SIZE;
+		}
+		
 		public ImList<ContextItem> getOpenContextItems(final WorkingContext context) {
 			final ImList<ContextItem> contextItems= this.contextItems;
 			if (context != null) {
@@ -287,13 +629,10 @@ public class SourceUnitManager implements ISourceUnitManager, IDisposable {
 			for (final ContextItem contextItem : contextItems) {
 				SuItem suItem;
 				while ((suItem= (SuItem) contextItem.susToClean.poll()) != null){
-					synchronized (contextItem.sus) {
-						if (contextItem.sus.get(suItem.getKey()) == suItem) {
-							contextItem.sus.remove(suItem.getKey());
-						}
-						suItem.dispose();
-						count++;
-					}
+					contextItem.sus.remove(suItem.getKey(), suItem);
+					contextItem.collectedCount.increment();
+					suItem.dispose();
+					count++;
 				}
 			}
 		}
@@ -359,26 +698,7 @@ public class SourceUnitManager implements ISourceUnitManager, IDisposable {
 		if (contextItem != null) {
 			final String id= (fromUnit != null) ? fromUnit.getId() : contextItem.factory.createId(from);
 			if (id != null) {
-				synchronized (contextItem) {
-					SuItem suItem= contextItem.sus.get(id);
-					if (suItem != null) {
-						su= suItem.get();
-						if (suItem.isEnqueued()) {
-							su= null;
-						}
-					}
-					else {
-						if (create) {
-							su= contextItem.factory.createSourceUnit(id, from);
-							if (su == null || !su.getModelTypeId().equals(modelItem.modelTypeId)
-									|| (su.getElementType() & IModelElement.MASK_C1) != IModelElement.C1_SOURCE) {
-								// TODO log
-								return null; 
-							}
-							suItem= new SuItem(id, su, contextItem.susToClean);
-						}
-					}
-				}
+				su= contextItem.getSu(modelItem.modelTypeId, id, from, create);
 			}
 		}
 		else {
@@ -439,7 +759,7 @@ public class SourceUnitManager implements ISourceUnitManager, IDisposable {
 		final ArrayList<ISourceUnit> list= new ArrayList<>(4);
 		
 		for (int i= 0; i < includedModelItems.size(); i++) {
-			final ImList<ContextItem> contextItems= this.modelItems.get(i).getOpenContextItems(context);
+			final ImList<ContextItem> contextItems= includedModelItems.get(i).getOpenContextItems(context);
 			if (contextItems.isEmpty()) {
 				continue;
 			}
@@ -462,7 +782,7 @@ public class SourceUnitManager implements ISourceUnitManager, IDisposable {
 		final ArrayList<ISourceUnit> list= new ArrayList<>(4);
 		
 		for (int i= 0; i < includedModelItems.size(); i++) {
-			final ImList<ContextItem> contextItems= this.modelItems.get(i).getOpenContextItems(context);
+			final ImList<ContextItem> contextItems= includedModelItems.get(i).getOpenContextItems(context);
 			if (contextItems.isEmpty()) {
 				continue;
 			}
@@ -478,6 +798,25 @@ public class SourceUnitManager implements ISourceUnitManager, IDisposable {
 	}
 	
 	
+	@Override
+	public ISourceUnitCacheStatistics getCacheStatistics(final String modelTypeId,
+			final WorkingContext context) {
+		if (modelTypeId == null) {
+			throw new NullPointerException("modelTypeId"); //$NON-NLS-1$
+		}
+		if (context == null) {
+			throw new NullPointerException("context"); //$NON-NLS-1$
+		}
+		
+		final List<ModelItem> modelItems= getOpenModelItems(modelTypeId);
+		if (modelItems.isEmpty()) {
+			return null;
+		}
+		final ContextItem contextItem= modelItems.get(0).getContextItem(context, false);
+		return (contextItem != null) ? contextItem.createStatistics() : null;
+	}
+	
+	
 	private IContentType detectContentType(final Object from) {
 		try {
 			if (from instanceof IFile) {
@@ -11,30 +11,72 @@
 
 package de.walware.ecommons.tasklist;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Objects;
 
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.text.BadLocationException;
 
 import de.walware.ecommons.text.core.ILineInformation;
 
 
+/**
+ * Creates task markers for task tags found in the source of a resource.
+ * <p>
+ * By default markers are created immediately by {@link #addTaskMarker addTaskMarker}.
+ * In update mode ({@link #beginUpdate()} .. {@link #finishUpdate(IProgressMonitor)}) the tasks
+ * are collected and compared to the existing markers of the resource at the end, so that only
+ * markers which actually differ are created, changed or deleted in a single workspace operation.
+ * </p>
+ * <p>
+ * The update mode is opt-in: builders which want to use it must wrap their calls of
+ * {@link #removeTaskMarkers()}, {@link #checkForTasks checkForTasks} and
+ * {@link #addTaskMarker addTaskMarker} for a resource as follows; without it, the handler
+ * behaves as before.</p>
+ * <pre>
+ * handler.setup(resource);
+ * handler.beginUpdate();
+ * handler.removeTaskMarkers();
+ * handler.checkForTasks(...);
+ * handler.finishUpdate(monitor);
+ * </pre>
+ */
 public class TaskMarkerHandler {
 	
 	
+	private static final String[] ATTRIBUTE_NAMES= new String[] {
+			IMarker.MESSAGE,
+			IMarker.PRIORITY,
+			IMarker.LINE_NUMBER,
+			IMarker.CHAR_START,
+			IMarker.CHAR_END,
+			IMarker.USER_EDITABLE,
+	};
+	
+	
 	private final String markerId;
 	
-	private Pattern taskTagPattern;
+	private TaskTagMatcher taskTagMatcher;
 	private Map<String, TaskPriority> taskTagMap;
 	
 	private IResource resource;
 	
+	private List<Object[]> updateTasks;
+	
+	private int createdCount;
+	private int changedCount;
+	private int deletedCount;
+	private int unchangedCount;
+	
 	
 	public TaskMarkerHandler(final String markerId) {
 		this.markerId= markerId;
@@ -50,27 +92,55 @@ public class TaskMarkerHandler {
 		
 		final TaskPriority prio= this.taskTagMap.get(match);
 		
-		final IMarker marker= this.resource.createMarker(this.markerId);
-		
-		marker.setAttribute(IMarker.MESSAGE, message);
-		marker.setAttribute(IMarker.PRIORITY, prio.getMarkerPriority());
 		if (lineNumber == -1) {
 			lineNumber= 1;
 		}
-		marker.setAttribute(IMarker.LINE_NUMBER, lineNumber);
+		final Object[] attributes;
 		if (offset != -1) {
-			marker.setAttribute(IMarker.CHAR_START, offset);
-			marker.setAttribute(IMarker.CHAR_END, offset+message.length());
+			attributes= new Object[] {
+					message,
+					prio.getMarkerPriority(),
+					lineNumber,
+					offset,
+					offset+message.length(),
+					Boolean.FALSE,
+			};
+		}
+		else {
+			attributes= new Object[] {
+					message,
+					prio.getMarkerPriority(),
+					lineNumber,
+					null,
+					null,
+					Boolean.FALSE,
+			};
 		}
-		marker.setAttribute(IMarker.USER_EDITABLE, false);
+		
+		if (this.updateTasks != null) {
+			this.updateTasks.add(attributes);
+			return;
+		}
+		
+		final IMarker marker= this.resource.createMarker(this.markerId);
+		marker.setAttributes(ATTRIBUTE_NAMES, attributes);
 	}
 	
+	/**
+	 * Deletes all task markers of the resource.
+	 * <p>
+	 * In update mode, the method does nothing since obsolete markers are deleted by
+	 * {@link #finishUpdate(IProgressMonitor)}.</p>
+	 */
 	public void removeTaskMarkers() throws CoreException {
+		if (this.updateTasks != null) {
+			return;
+		}
 		this.resource.deleteMarkers(this.markerId, false, IResource.DEPTH_INFINITE);
 	}
 	
 	protected void initTaskPattern(final List<TaskTag> taskTags) {
-		this.taskTagPattern= null;
+		this.taskTagMatcher= null;
 		this.taskTagMap= null;
 		
 		if (taskTags.isEmpty()) {
@@ -78,29 +148,184 @@ public class TaskMarkerHandler {
 		}
 		
 		this.taskTagMap= new HashMap<>(taskTags.size());
-		final String separatorRegex= "[^\\p{L}\\p{N}]"; //$NON-NLS-1$
-		final StringBuilder regex= new StringBuilder(separatorRegex);
-		regex.append('(');
 		for (final TaskTag taskTag : taskTags) {
-			regex.append(Pattern.quote(taskTag.getKeyword()));
-			regex.append('|'); 
 			this.taskTagMap.put(taskTag.getKeyword(), taskTag.getPriority());
 		}
-		regex.setCharAt(regex.length()-1, ')');
-		regex.append("(?:\\z|").append(separatorRegex).append(")"); //$NON-NLS-1$ //$NON-NLS-2$
-		this.taskTagPattern= Pattern.compile(regex.toString());
+		this.taskTagMatcher= new TaskTagMatcher(new ArrayList<>(taskTags));
 	}
 	
+	/**
+	 * Checks the specified content (e.g. a comment) for task tags and adds a task marker
+	 * for each tag found.
+	 * <p>
+	 * The message of a task starts at its tag and ends at the next tag or at the end of the
+	 * content.</p>
+	 * 
+	 * @param content the content to check
+	 * @param offset the offset of the content in the document
+	 * @param lines the line information of the document
+	 */
 	public void checkForTasks(final String content, final int offset, final ILineInformation lines)
 			throws CoreException, BadLocationException {
-		if (this.taskTagPattern != null) {
-			final Matcher matcher= this.taskTagPattern.matcher(content);
-			if (matcher.find()) {
-				final int start= matcher.start(1);
-				final String text= new String(content.substring(start));
-				addTaskMarker(text, offset+start, lines.getLineOfOffset(offset)+1, matcher.group(1));
+		if (this.taskTagMatcher != null) {
+			final int[] matches= this.taskTagMatcher.find(content);
+			for (int i= 0; i < matches.length; i+= 2) {
+				final int start= matches[i];
+				final String keyword= this.taskTagMatcher.getTaskTag(matches[i + 1]).getKeyword();
+				final String text;
+				if (i + 2 < matches.length) {
+					int end= matches[i + 2];
+					while (end > start && Character.isWhitespace(content.charAt(end - 1))) {
+						end--;
+					}
+					text= content.substring(start, end);
+				}
+				else {
+					text= content.substring(start);
+				}
+				addTaskMarker(text, offset+start, lines.getLineOfOffset(offset+start)+1, keyword);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Starts the update mode.
+	 * <p>
+	 * Tasks added until {@link #finishUpdate(IProgressMonitor)} are collected instead of
+	 * creating the markers immediately.</p>
+	 */
+	public void beginUpdate() {
+		this.updateTasks= new ArrayList<>();
+	}
+	
+	/**
+	 * Finishes the update mode and synchronizes the task markers of the resource with the
+	 * collected tasks.
+	 * <p>
+	 * Existing markers with identical attributes are kept, other markers are reused or deleted
+	 * and missing markers are created. All changes are done in a single workspace operation.
+	 * </p>
+	 * 
+	 * @param monitor the progress monitor
+	 */
+	public void finishUpdate(final IProgressMonitor monitor) throws CoreException {
+		final List<Object[]> tasks= this.updateTasks;
+		if (tasks == null) {
+			return;
+		}
+		this.updateTasks= null;
+		this.createdCount= 0;
+		this.changedCount= 0;
+		this.deletedCount= 0;
+		this.unchangedCount= 0;
+		
+		final IResource resource= this.resource;
+		final IWorkspace workspace= ResourcesPlugin.getWorkspace();
+		workspace.run(new IWorkspaceRunnable() {
+			@Override
+			public void run(final IProgressMonitor monitor) throws CoreException {
+				updateMarkers(resource, tasks);
+			}
+		}, workspace.getRuleFactory().markerRule(resource), IWorkspace.AVOID_UPDATE, monitor );
+	}
+	
+	private void updateMarkers(final IResource resource, final List<Object[]> tasks)
+			throws CoreException {
+		final IMarker[] markers= (resource.exists()) ?
+				resource.findMarkers(this.markerId, false, IResource.DEPTH_INFINITE) :
+				new IMarker[0];
+		final List<IMarker> unused= new ArrayList<>(markers.length);
+		final boolean[] done= new boolean[tasks.size()];
+		
+		// keep identical markers
+		final Map<String, List<Integer>> taskIdxs= new HashMap<>();
+		for (int i= 0; i < tasks.size(); i++) {
+			final String key= (String) tasks.get(i)[0];
+			List<Integer> idxs= taskIdxs.get(key);
+			if (idxs == null) {
+				idxs= new ArrayList<>(1);
+				taskIdxs.put(key, idxs);
 			}
+			idxs.add(i);
+		}
+		for (final IMarker marker : markers) {
+			final Object[] attributes= marker.getAttributes(ATTRIBUTE_NAMES);
+			final List<Integer> idxs= taskIdxs.get(attributes[0]);
+			boolean found= false;
+			if (idxs != null) {
+				for (final Integer idx : idxs) {
+					if (!done[idx] && isEqual(tasks.get(idx), attributes)) {
+						done[idx]= true;
+						found= true;
+						this.unchangedCount++;
+						break;
+					}
+				}
+			}
+			if (!found) {
+				unused.add(marker);
+			}
+		}
+		
+		// change or create markers for the remaining tasks
+		int unusedIdx= 0;
+		for (int i= 0; i < tasks.size(); i++) {
+			if (done[i]) {
+				continue;
+			}
+			if (unusedIdx < unused.size()) {
+				unused.get(unusedIdx++).setAttributes(ATTRIBUTE_NAMES, tasks.get(i));
+				this.changedCount++;
+			}
+			else {
+				resource.createMarker(this.markerId).setAttributes(ATTRIBUTE_NAMES, tasks.get(i));
+				this.createdCount++;
+			}
+		}
+		
+		// delete obsolete markers
+		for (; unusedIdx < unused.size(); unusedIdx++) {
+			unused.get(unusedIdx).delete();
+			this.deletedCount++;
 		}
 	}
 	
+	private static boolean isEqual(final Object[] task, final Object[] attributes) {
+		for (int i= 0; i < task.length; i++) {
+			if (!Objects.equals(task[i], attributes[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the number of markers created by the last update.
+	 */
+	public int getCreatedCount() {
+		return this.createdCount;
+	}
+	
+	/**
+	 * Returns the number of existing markers changed by the last update.
+	 */
+	public int getChangedCount() {
+		return this.changedCount;
+	}
+	
+	/**
+	 * Returns the number of markers deleted by the last update.
+	 */
+	public int getDeletedCount() {
+		return this.deletedCount;
+	}
+	
+	/**
+	 * Returns the number of existing markers left unchanged by the last update.
+	 */
+	public int getUnchangedCount() {
+		return this.unchangedCount;
+	}
+	
 }
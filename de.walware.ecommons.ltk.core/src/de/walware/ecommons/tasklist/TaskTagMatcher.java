@@ -0,0 +1,211 @@
+/*=============================================================================#
+ # Copyright (c) 2016 Stephan Wahlbrink (WalWare.de) and others.
+ # All rights reserved. This program and the accompanying materials
+ # are made available under the terms of the Eclipse Public License v1.0
+ # which accompanies this distribution, and is available at
+ # http://www.eclipse.org/legal/epl-v10.html
+ # 
+ # Contributors:
+ #     Stephan Wahlbrink - initial API and implementation
+ #=============================================================================*/
+
+package de.walware.ecommons.tasklist;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Finds task tags in text using an Aho-Corasick automaton over the keywords.
+ * <p>
+ * A keyword matches only if it is enclosed by separators (chars which are neither letters nor
+ * numbers); at the start of the text a separator is required too. If several keywords match
+ * at the same offset, the first one in the list of task tags is used; overlapping matches are
+ * skipped.</p>
+ */
+final class TaskTagMatcher {
+	
+	
+	private static final class Node {
+		
+		/** Chars of the transitions to the children, sorted */
+		private char[] chars= NO_CHARS;
+		private Node[] children= NO_NODES;
+		
+		private Node fail;
+		
+		/** Indexes of the keywords ending at this node (incl. by fail links) */
+		private int[] keywordIdxs= NO_KEYWORDS;
+		
+		
+		public Node getChild(final char c) {
+			final int idx= Arrays.binarySearch(this.chars, c);
+			return (idx >= 0) ? this.children[idx] : null;
+		}
+		
+		public Node addChild(final char c) {
+			int idx= Arrays.binarySearch(this.chars, c);
+			if (idx >= 0) {
+				return this.children[idx];
+			}
+			idx= -(idx + 1);
+			final int n= this.chars.length;
+			final char[] chars= new char[n + 1];
+			final Node[] children= new Node[n + 1];
+			System.arraycopy(this.chars, 0, chars, 0, idx);
+			System.arraycopy(this.children, 0, children, 0, idx);
+			System.arraycopy(this.chars, idx, chars, idx + 1, n - idx);
+			System.arraycopy(this.children, idx, children, idx + 1, n - idx);
+			final Node child= new Node();
+			chars[idx]= c;
+			children[idx]= child;
+			this.chars= chars;
+			this.children= children;
+			return child;
+		}
+		
+	}
+	
+	private static final char[] NO_CHARS= new char[0];
+	private static final Node[] NO_NODES= new Node[0];
+	private static final int[] NO_KEYWORDS= new int[0];
+	
+	
+	private final List<TaskTag> taskTags;
+	private final int[] keywordLengths;
+	
+	private final Node root= new Node();
+	
+	
+	public TaskTagMatcher(final List<TaskTag> taskTags) {
+		this.taskTags= taskTags;
+		this.keywordLengths= new int[taskTags.size()];
+		for (int i= 0; i < taskTags.size(); i++) {
+			final String keyword= taskTags.get(i).getKeyword();
+			this.keywordLengths[i]= keyword.length();
+			if (keyword.isEmpty()) {
+				continue;
+			}
+			Node node= this.root;
+			for (int j= 0; j < keyword.length(); j++) {
+				node= node.addChild(keyword.charAt(j));
+			}
+			node.keywordIdxs= add(node.keywordIdxs, i);
+		}
+		
+		// fail links (breadth first)
+		final List<Node> queue= new ArrayList<>();
+		for (final Node child : this.root.children) {
+			child.fail= this.root;
+			queue.add(child);
+		}
+		for (int i= 0; i < queue.size(); i++) {
+			final Node node= queue.get(i);
+			for (int j= 0; j < node.chars.length; j++) {
+				final char c= node.chars[j];
+				final Node child= node.children[j];
+				Node fail= node.fail;
+				Node failChild= null;
+				while (fail != null && (failChild= fail.getChild(c)) == null) {
+					fail= fail.fail;
+				}
+				child.fail= (failChild != null) ? failChild : this.root;
+				for (final int keywordIdx : child.fail.keywordIdxs) {
+					child.keywordIdxs= add(child.keywordIdxs, keywordIdx);
+				}
+				queue.add(child);
+			}
+		}
+	}
+	
+	private static int[] add(final int[] array, final int value) {
+		final int[] newArray= Arrays.copyOf(array, array.length + 1);
+		newArray[array.length]= value;
+		return newArray;
+	}
+	
+	
+	private static boolean isSeparator(final int codepoint) {
+		if (Character.isLetter(codepoint)) {
+			return false;
+		}
+		switch (Character.getType(codepoint)) {
+		case Character.DECIMAL_DIGIT_NUMBER:
+		case Character.LETTER_NUMBER:
+		case Character.OTHER_NUMBER:
+			return false;
+		default:
+			return true;
+		}
+	}
+	
+	/**
+	 * Finds all task tags in the text.
+	 * 
+	 * @param text the text to search in
+	 * @return the matches as pairs (start offset, index of the task tag), sorted by offset
+	 */
+	public int[] find(final String text) {
+		final int length= text.length();
+		int[] candidates= null; // pairs (start, keyword index)
+		int candidateCount= 0;
+		
+		Node node= this.root;
+		for (int i= 0; i < length; i++) {
+			final char c= text.charAt(i);
+			Node next;
+			while ((next= node.getChild(c)) == null && node != this.root) {
+				node= node.fail;
+			}
+			node= (next != null) ? next : this.root;
+			
+			for (final int keywordIdx : node.keywordIdxs) {
+				final int start= i + 1 - this.keywordLengths[keywordIdx];
+				final int end= i + 1;
+				if (start > 0 && isSeparator(text.codePointBefore(start))
+						&& (end == length || isSeparator(text.codePointAt(end))) ) {
+					if (candidates == null) {
+						candidates= new int[8];
+					}
+					else if (candidateCount * 2 == candidates.length) {
+						candidates= Arrays.copyOf(candidates, candidates.length * 2);
+					}
+					candidates[candidateCount * 2]= start;
+					candidates[candidateCount * 2 + 1]= keywordIdx;
+					candidateCount++;
+				}
+			}
+		}
+		if (candidateCount == 0) {
+			return NO_KEYWORDS;
+		}
+		
+		// sort by start, then by keyword index
+		final long[] sorted= new long[candidateCount];
+		for (int i= 0; i < candidateCount; i++) {
+			sorted[i]= ((long) candidates[i * 2] << 32) | candidates[i * 2 + 1];
+		}
+		Arrays.sort(sorted);
+		final int[] matches= new int[candidateCount * 2];
+		int matchCount= 0;
+		int end= 0;
+		for (int i= 0; i < candidateCount; i++) {
+			final int start= (int) (sorted[i] >>> 32);
+			final int keywordIdx= (int) sorted[i];
+			if (start < end) {
+				continue;
+			}
+			matches[matchCount * 2]= start;
+			matches[matchCount * 2 + 1]= keywordIdx;
+			matchCount++;
+			end= start + this.keywordLengths[keywordIdx];
+		}
+		return Arrays.copyOf(matches, matchCount * 2);
+	}
+	
+	public TaskTag getTaskTag(final int keywordIdx) {
+		return this.taskTags.get(keywordIdx);
+	}
+	
+}
@@ -15,7 +15,9 @@ import org.apache.commons.collections.primitives.ArrayIntList;
 import org.apache.commons.collections.primitives.IntList;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.BadPartitioningException;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ITypedRegion;
 import org.eclipse.jface.text.Region;
@@ -36,6 +38,10 @@ import de.walware.ecommons.text.core.sections.IDocContentSections;
 public class BasicHeuristicTokenScanner implements ITokenScanner {
 	
 	
+	/** Max length of the text window read from the document at once */
+	private static final int WINDOW_LENGTH = 2048;
+	
+	
 	protected static final IPartitionConstraint ALL_PARTITIONS_CONSTRAINT = new IPartitionConstraint() {
 		
 		@Override
@@ -260,6 +266,18 @@ public class BasicHeuristicTokenScanner implements ITokenScanner {
 	/** the most recently read line of position (only if used). */
 	private int fLine;
 	
+	/** the document of the text window. */
+	private IDocument fWindowDocument;
+	/** the modification stamp of the document of the text window. */
+	private long fWindowStamp;
+	/** the text window, a fragment of the document (only if used). */
+	private String fWindow;
+	/** the offset of the text window in the document. */
+	private int fWindowOffset;
+	
+	/** the cursor for partitions of the document (only if used). */
+	private PartitionCursor fPartitionCursor;
+	
 	private StopCondition fNonWSCondition;
 	private StopCondition fNonWSorLRCondition;
 	
@@ -694,9 +712,10 @@ public class BasicHeuristicTokenScanner implements ITokenScanner {
 		assert(start >= 0);
 		
 		try {
+			checkWindow();
 			fPos = start;
 			while (fPos < bound) {
-				fChar = fDocument.getChar(fPos);
+				fChar = getWindowCharForward(fPos, bound);
 				if (condition.stop()) {
 					return fPos;
 				}
@@ -766,9 +785,10 @@ public class BasicHeuristicTokenScanner implements ITokenScanner {
 		
 		try {
 			if (fDocument.getLength() > 0) {
+				checkWindow();
 				fPos = start;
 				while (fPos > bound) {
-					fChar = fDocument.getChar(fPos);
+					fChar = getWindowCharBackward(fPos, bound);
 					if (condition.stop()) {
 						return fPos;
 					}
@@ -783,6 +803,70 @@ public class BasicHeuristicTokenScanner implements ITokenScanner {
 		return NOT_FOUND;
 	}
 	
+	/**
+	 * Discards the text window if it is not valid for the current document.
+	 */
+	private void checkWindow() {
+		if (fWindow != null
+				&& (fWindowDocument != fDocument || getModificationStamp() != fWindowStamp) ) {
+			fWindow = null;
+		}
+	}
+	
+	private long getModificationStamp() {
+		return (fDocument instanceof IDocumentExtension4) ?
+				((IDocumentExtension4) fDocument).getModificationStamp() :
+				IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	}
+	
+	/**
+	 * Returns the character at the specified position, reading the text window forward
+	 * (up to <code>bound</code>) if required.
+	 */
+	private char getWindowCharForward(final int position, final int bound) throws BadLocationException {
+		if (fWindow != null) {
+			final int index = position - fWindowOffset;
+			if (index >= 0 && index < fWindow.length()) {
+				return fWindow.charAt(index);
+			}
+		}
+		final int end = Math.min(Math.min(bound, fDocument.getLength()), position + WINDOW_LENGTH);
+		readWindow(position, end);
+		return fWindow.charAt(0);
+	}
+	
+	/**
+	 * Returns the character at the specified position, reading the text window backward
+	 * (down to <code>bound</code>) if required.
+	 */
+	private char getWindowCharBackward(final int position, final int bound) throws BadLocationException {
+		if (fWindow != null) {
+			final int index = position - fWindowOffset;
+			if (index >= 0 && index < fWindow.length()) {
+				return fWindow.charAt(index);
+			}
+		}
+		final int begin = Math.max(Math.max(bound + 1, 0), position - WINDOW_LENGTH + 1);
+		readWindow(begin, position + 1);
+		return fWindow.charAt(position - begin);
+	}
+	
+	private void readWindow(final int begin, final int end) throws BadLocationException {
+		if (begin < 0 || begin >= end || end > fDocument.getLength()) {
+			fWindow = null;
+			throw new BadLocationException();
+		}
+		final long stamp = getModificationStamp();
+		fWindow = fDocument.get(begin, end - begin);
+		fWindowOffset = begin;
+		fWindowDocument = fDocument;
+		fWindowStamp = stamp;
+		if (stamp == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP) {
+			// validity of the window can not be checked in subsequent scans
+			fWindowDocument = null;
+		}
+	}
+	
 	/**
 	 * Finds the highest position in <code>fDocument</code> such that the position is &lt;= <code>position</code>
 	 * and &gt; <code>bound</code> and <code>fDocument.getChar(position) == ch</code> evaluates to <code>true</code> for at least one
@@ -871,9 +955,9 @@ public class BasicHeuristicTokenScanner implements ITokenScanner {
 	 */
 	protected final ITypedRegion getPartition() {
 		try {
-			return TextUtilities.getPartition(fDocument, this.partitioning, fPos, false);
+			return getPartitionCursor().getPartition(fPos);
 		}
-		catch (final BadLocationException e) {
+		catch (final BadLocationException | BadPartitioningException e) {
 			return new TypedRegion(fPos, 0, "__no_partition_at_all"); //$NON-NLS-1$
 		}
 	}
@@ -887,11 +971,19 @@ public class BasicHeuristicTokenScanner implements ITokenScanner {
 	 */
 	public final ITypedRegion getPartition(final int position) {
 		try {
-			return TextUtilities.getPartition(fDocument, this.partitioning, position, false);
+			return getPartitionCursor().getPartition(position);
 		}
-		catch (final BadLocationException e) {
+		catch (final BadLocationException | BadPartitioningException e) {
 			return new TypedRegion(fPos, 0, "__no_partition_at_all"); //$NON-NLS-1$
 		}
 	}
 	
+	private PartitionCursor getPartitionCursor() {
+		if (fPartitionCursor == null || fPartitionCursor.getDocument() != fDocument
+				|| !(fDocument instanceof IDocumentExtension4) ) {
+			fPartitionCursor = new PartitionCursor(fDocument, this.partitioning);
+		}
+		return fPartitionCursor;
+	}
+	
 }
@@ -11,14 +11,27 @@
 
 package de.walware.ecommons.text;
 
+import java.util.function.IntPredicate;
+
 import org.eclipse.jface.text.BadLocationException;
 
 
+/**
+ * Code point iterator for content of UTF-16 chars.
+ * <p>
+ * In addition to the default iteration, the iterator supports bulk operations reading the chars
+ * in blocks into a reusable array ({@link #skipForward(IntPredicate)},
+ * {@link #skipBackward(IntPredicate)}, {@link #getChars(int, int, char[], int)}). Chars which
+ * are not part of a surrogate pair (e.g. all ASCII chars) are checked directly in the array.</p>
+ */
 public abstract class CharCodepointIterator implements ICodepointIterator {
 	
 	
 	private static final byte PREPARE_STEPBACK = (PREPARE_BACKWARD | PREPARE_FIX);
 	
+	/** Length of the array used for bulk operations */
+	private static final int BUFFER_LENGTH = 256;
+	
 	
 	private static class StringIterator extends CharCodepointIterator {
 		
@@ -41,6 +54,12 @@ public abstract class CharCodepointIterator implements ICodepointIterator {
 			return fString.charAt(offset - fStringOffset);
 		}
 		
+		@Override
+		protected void copyChars(final int beginIndex, final int endIndex,
+				final char[] dest, final int destIndex, final byte prepare) {
+			fString.getChars(beginIndex - fStringOffset, endIndex - fStringOffset, dest, destIndex);
+		}
+		
 		
 		@Override
 		public String toString() {
@@ -70,6 +89,12 @@ public abstract class CharCodepointIterator implements ICodepointIterator {
 			return fArray[offset - fArrayOffset];
 		}
 		
+		@Override
+		protected void copyChars(final int beginIndex, final int endIndex,
+				final char[] dest, final int destIndex, final byte prepare) {
+			System.arraycopy(fArray, beginIndex - fArrayOffset, dest, destIndex, endIndex - beginIndex);
+		}
+		
 		
 		@Override
 		public String toString() {
@@ -125,6 +150,8 @@ public abstract class CharCodepointIterator implements ICodepointIterator {
 	private int fCurrentCodepoint;
 	private int fCurrentCharLength;
 	
+	private char[] fBuffer;
+	
 	
 	protected CharCodepointIterator(final int beginIndex, final int endIndex) {
 		fBeginIndex = beginIndex;
@@ -134,6 +161,32 @@ public abstract class CharCodepointIterator implements ICodepointIterator {
 	
 	protected abstract char getChar(int index, byte prepare);
 	
+	/**
+	 * Copies the chars of the specified range into the array.
+	 * 
+	 * The range is valid in the content of the iterator. The default implementation
+	 * uses {@link #getChar(int, byte)}.
+	 * 
+	 * @param beginIndex the begin index in the document
+	 * @param endIndex the end index in the document
+	 * @param dest the destination array
+	 * @param destIndex the start index in the destination array
+	 * @param prepare the prepare flags
+	 */
+	protected void copyChars(final int beginIndex, final int endIndex,
+			final char[] dest, int destIndex, final byte prepare) {
+		for (int index = beginIndex; index < endIndex; index++) {
+			dest[destIndex++] = getChar(index, prepare);
+		}
+	}
+	
+	private char[] getBuffer() {
+		if (fBuffer == null) {
+			fBuffer = new char[BUFFER_LENGTH];
+		}
+		return fBuffer;
+	}
+	
 	
 	@Override
 	public final int first() {
@@ -190,6 +243,89 @@ public abstract class CharCodepointIterator implements ICodepointIterator {
 		return (count == 0) ? fCurrentCodepoint : EOF;
 	}
 	
+	@Override
+	public final int skipForward(final IntPredicate predicate) {
+		if (fCurrentIndex >= fEndIndex || !predicate.test(fCurrentCodepoint)) {
+			return fCurrentCodepoint;
+		}
+		int index = fCurrentIndex + fCurrentCharLength;
+		final char[] buffer = getBuffer();
+		ITER_BLOCKS : while (index < fEndIndex) {
+			final int length = Math.min(buffer.length, fEndIndex - index);
+			copyChars(index, index + length, buffer, 0, PREPARE_FORWARD);
+			for (int i = 0; i < length; i++) {
+				final char c = buffer[i];
+				if (!Character.isSurrogate(c)) {
+					if (!predicate.test(c)) {
+						index += i;
+						break ITER_BLOCKS;
+					}
+				}
+				else {
+					internalSet(index + i, PREPARE_FORWARD);
+					if (!predicate.test(fCurrentCodepoint)) {
+						return fCurrentCodepoint;
+					}
+					index = fCurrentIndex + fCurrentCharLength;
+					continue ITER_BLOCKS;
+				}
+			}
+			index += length;
+		}
+		internalSet(index, PREPARE_FORWARD);
+		return fCurrentCodepoint;
+	}
+	
+	@Override
+	public final int skipBackward(final IntPredicate predicate) {
+		int index = fCurrentIndex;
+		final char[] buffer = getBuffer();
+		ITER_BLOCKS : while (index > fBeginIndex) {
+			final int length = Math.min(buffer.length, index - fBeginIndex);
+			final int blockIndex = index - length;
+			copyChars(blockIndex, index, buffer, 0, PREPARE_BACKWARD);
+			for (int i = length - 1; i >= 0; i--) {
+				final char c = buffer[i];
+				if (!Character.isSurrogate(c)) {
+					if (!predicate.test(c)) {
+						break ITER_BLOCKS;
+					}
+					index = blockIndex + i;
+				}
+				else {
+					internalSet(blockIndex + i, PREPARE_STEPBACK);
+					if (!predicate.test(fCurrentCodepoint)) {
+						break ITER_BLOCKS;
+					}
+					index = fCurrentIndex;
+					continue ITER_BLOCKS;
+				}
+			}
+		}
+		internalSet(index, PREPARE_FORWARD);
+		return fCurrentCodepoint;
+	}
+	
+	/**
+	 * Copies the chars of the specified range of the content into the array.
+	 * 
+	 * @param beginIndex the begin index in the document
+	 * @param endIndex the end index in the document
+	 * @param dest the destination array
+	 * @param destIndex the start index in the destination array
+	 * @throws BadLocationException if the range is not valid for the content of the iterator
+	 */
+	public final void getChars(final int beginIndex, final int endIndex,
+			final char[] dest, final int destIndex) throws BadLocationException {
+		if (beginIndex < fBeginIndex || beginIndex > endIndex || endIndex > fEndIndex) {
+			throw new BadLocationException();
+		}
+		if (destIndex < 0 || destIndex + (endIndex - beginIndex) > dest.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		copyChars(beginIndex, endIndex, dest, destIndex, PREPARE_FORWARD);
+	}
+	
 	@Override
 	public void setIndex(final int index, final byte prepare) throws BadLocationException {
 		if (index < fBeginIndex || index > fEndIndex) {
@@ -0,0 +1,554 @@
+/*=============================================================================#
+ # Copyright (c) 2016 Stephan Wahlbrink (WalWare.de) and others.
+ # All rights reserved. This program and the accompanying materials
+ # are made available under the terms of the Eclipse Public License v1.0
+ # which accompanies this distribution, and is available at
+ # http://www.eclipse.org/legal/epl-v10.html
+ # 
+ # Contributors:
+ #     Stephan Wahlbrink - initial API and implementation
+ #=============================================================================*/
+
+package de.walware.ecommons.text;
+
+import static de.walware.ecommons.text.ITokenScanner.CLOSING_PEER;
+import static de.walware.ecommons.text.ITokenScanner.NOT_FOUND;
+import static de.walware.ecommons.text.ITokenScanner.OPENING_PEER;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.DocumentPartitioningChangedEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IDocumentPartitioningListener;
+import org.eclipse.jface.text.IDocumentPartitioningListenerExtension2;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.TextUtilities;
+
+
+/**
+ * Index of the pair characters (brackets) in a document.
+ * <p>
+ * For each applicable partition type and pair, the index stores the positions of the peers
+ * (not escaped) and their prefix depth, so the matching peer can be found by a lookup instead
+ * of scanning the document. The results are identical to
+ * {@link BasicHeuristicTokenScanner#findClosingPeer(int, char[], char)} and
+ * {@link BasicHeuristicTokenScanner#findOpeningPeer(int, char[], char)} configured for the
+ * partition type.</p>
+ * <p>
+ * The index is updated incrementally by document and partitioning changes; regions changed
+ * since the last query are rescanned at the next query. The index must be
+ * {@link #dispose() disposed} if no longer used.</p>
+ * <p>
+ * The class is not thread safe.</p>
+ *
+ * @see PairMatcher
+ */
+public class CharPairIndex {
+	
+	
+	/**
+	 * Returned by the find methods if the index is not valid for the document.
+	 */
+	public static final int NOT_AVAILABLE= -2;
+	
+	
+	/**
+	 * Peers of a pair in partitions of one type.
+	 * <p>
+	 * The entries are sorted and encoded as <code>(offset &lt;&lt; 1) | 1</code> for opening and
+	 * <code>offset &lt;&lt; 1</code> for closing peers. While replacing a range, the entries
+	 * behind the range are moved to the end of the array (gap).</p>
+	 */
+	private static final class Track {
+		
+		private int[] entries= new int[16];
+		private int size;
+		
+		private int gapStart= -1;
+		private int tailSize;
+		
+		/** Depth before entry i: depths[0..size] */
+		private int[] depths;
+		/** Segment tree with the minimum of depths */
+		private int[] minTree;
+		private int leafCount;
+		private boolean depthsValid;
+		
+		
+		public int lowerBound(final int offset) {
+			int low= 0;
+			int high= this.size;
+			while (low < high) {
+				final int mid= (low + high) >>> 1;
+				if ((this.entries[mid] >> 1) < offset) {
+					low= mid + 1;
+				}
+				else {
+					high= mid;
+				}
+			}
+			return low;
+		}
+		
+		public void removeRange(final int startOffset, final int endOffset) {
+			final int start= lowerBound(startOffset);
+			final int end= lowerBound(endOffset);
+			if (start < end) {
+				System.arraycopy(this.entries, end, this.entries, start, this.size - end);
+				this.size-= (end - start);
+				this.depthsValid= false;
+			}
+		}
+		
+		public void shift(final int fromOffset, final int delta) {
+			final int[] entries= this.entries;
+			final int encodedDelta= delta << 1;
+			for (int i= lowerBound(fromOffset); i < this.size; i++) {
+				entries[i]+= encodedDelta;
+			}
+		}
+		
+		public void beginReplace(final int startOffset, final int endOffset) {
+			removeRange(startOffset, endOffset);
+			final int start= lowerBound(startOffset);
+			this.tailSize= this.size - start;
+			System.arraycopy(this.entries, start, this.entries, this.entries.length - this.tailSize, this.tailSize);
+			this.gapStart= start;
+		}
+		
+		public void add(final int offset, final boolean opening) {
+			if (this.gapStart + this.tailSize >= this.entries.length) {
+				final int[] newEntries= new int[this.entries.length * 2];
+				System.arraycopy(this.entries, 0, newEntries, 0, this.gapStart);
+				System.arraycopy(this.entries, this.entries.length - this.tailSize,
+						newEntries, newEntries.length - this.tailSize, this.tailSize);
+				this.entries= newEntries;
+			}
+			this.entries[this.gapStart++]= (opening) ? ((offset << 1) | 1) : (offset << 1);
+		}
+		
+		public void endReplace() {
+			System.arraycopy(this.entries, this.entries.length - this.tailSize, this.entries, this.gapStart, this.tailSize);
+			this.size= this.gapStart + this.tailSize;
+			this.gapStart= -1;
+			this.tailSize= 0;
+			this.depthsValid= false;
+		}
+		
+		private void updateDepths() {
+			if (this.depthsValid) {
+				return;
+			}
+			final int count= this.size + 1;
+			if (this.depths == null || this.depths.length < count) {
+				this.depths= new int[count + (count >> 2)];
+			}
+			final int[] depths= this.depths;
+			int depth= 0;
+			for (int i= 0; i < this.size; i++) {
+				depths[i]= depth;
+				depth+= ((this.entries[i] & 1) != 0) ? 1 : -1;
+			}
+			depths[this.size]= depth;
+			
+			int leafCount= 1;
+			while (leafCount < count) {
+				leafCount<<= 1;
+			}
+			if (this.minTree == null || this.minTree.length < 2 * leafCount) {
+				this.minTree= new int[2 * leafCount];
+			}
+			final int[] tree= this.minTree;
+			System.arraycopy(depths, 0, tree, leafCount, count);
+			for (int i= leafCount + count; i < 2 * leafCount; i++) {
+				tree[i]= Integer.MAX_VALUE;
+			}
+			for (int i= leafCount - 1; i > 0; i--) {
+				tree[i]= Math.min(tree[2 * i], tree[2 * i + 1]);
+			}
+			this.leafCount= leafCount;
+			this.depthsValid= true;
+		}
+		
+		/**
+		 * Returns the smallest index i &gt;= from with depths[i] &lt;= value, or -1.
+		 */
+		private int findFirstAtOrBelow(final int node, final int nodeStart, final int nodeEnd,
+				final int from, final int value) {
+			if (nodeEnd <= from || this.minTree[node] > value) {
+				return -1;
+			}
+			if (nodeEnd - nodeStart == 1) {
+				return nodeStart;
+			}
+			final int mid= (nodeStart + nodeEnd) >>> 1;
+			final int index= findFirstAtOrBelow(2 * node, nodeStart, mid, from, value);
+			return (index >= 0) ? index : findFirstAtOrBelow(2 * node + 1, mid, nodeEnd, from, value);
+		}
+		
+		/**
+		 * Returns the largest index i &lt;= to with depths[i] &lt;= value, or -1.
+		 */
+		private int findLastAtOrBelow(final int node, final int nodeStart, final int nodeEnd,
+				final int to, final int value) {
+			if (nodeStart > to || this.minTree[node] > value) {
+				return -1;
+			}
+			if (nodeEnd - nodeStart == 1) {
+				return nodeStart;
+			}
+			final int mid= (nodeStart + nodeEnd) >>> 1;
+			final int index= findLastAtOrBelow(2 * node + 1, mid, nodeEnd, to, value);
+			return (index >= 0) ? index : findLastAtOrBelow(2 * node, nodeStart, mid, to, value);
+		}
+		
+		public int findClosing(final int startOffset) {
+			updateDepths();
+			final int start= lowerBound(startOffset);
+			final int index= findFirstAtOrBelow(1, 0, this.leafCount, start + 1, this.depths[start] - 1);
+			return (index > 0) ? (this.entries[index - 1] >> 1) : NOT_FOUND;
+		}
+		
+		public int findOpening(final int startOffset) {
+			updateDepths();
+			final int end= lowerBound(startOffset + 1);
+			if (end == 0) {
+				return NOT_FOUND;
+			}
+			final int index= findLastAtOrBelow(1, 0, this.leafCount, end - 1, this.depths[end] - 1);
+			return (index >= 0) ? (this.entries[index] >> 1) : NOT_FOUND;
+		}
+		
+	}
+	
+	private class DocumentListener implements IDocumentListener,
+			IDocumentPartitioningListener, IDocumentPartitioningListenerExtension2 {
+		
+		@Override
+		public void documentAboutToBeChanged(final DocumentEvent event) {
+			CharPairIndex.this.inChange= true;
+		}
+		
+		@Override
+		public void documentChanged(final DocumentEvent event) {
+			CharPairIndex.this.inChange= false;
+			onDocumentChanged(event);
+		}
+		
+		@Override
+		public void documentPartitioningChanged(final IDocument document) {
+			addDirtyRegion(0, document.getLength());
+		}
+		
+		@Override
+		public void documentPartitioningChanged(final DocumentPartitioningChangedEvent event) {
+			final IRegion region= event.getChangedRegion(CharPairIndex.this.partitioning);
+			if (region != null) {
+				if (CharPairIndex.this.inChange) {
+					// region of the new document, the change is not yet applied to the index
+					addPendingRegion(region.getOffset(), region.getOffset() + region.getLength());
+				}
+				else {
+					addDirtyRegion(region.getOffset(), region.getOffset() + region.getLength());
+				}
+			}
+		}
+		
+	}
+	
+	
+	private final IDocument document;
+	private final String partitioning;
+	
+	private final char[][] pairs;
+	private final String[] partitions;
+	private final char[] escapeChars;
+	
+	private final Track[][] tracks;
+	
+	private final DocumentListener listener= new DocumentListener();
+	private boolean connected;
+	
+	private boolean inChange;
+	private long stamp;
+	
+	private int dirtyStart;
+	private int dirtyEnd;
+	private int pendingStart= -1;
+	private int pendingEnd;
+	
+	
+	/**
+	 * Creates a new index and connects it to the document.
+	 *
+	 * @param document the document
+	 * @param partitioning the partitioning of the document
+	 * @param pairs the pairs with opening and closing peer
+	 * @param partitions the applicable partition types
+	 * @param escapeChars the escape char for each partition type, <code>(char) 0</code> if none
+	 */
+	public CharPairIndex(final IDocument document, final String partitioning,
+			final char[][] pairs, final String[] partitions, final char[] escapeChars) {
+		this.document= document;
+		this.partitioning= partitioning;
+		this.pairs= pairs;
+		this.partitions= partitions;
+		this.escapeChars= escapeChars;
+		this.tracks= new Track[partitions.length][pairs.length];
+		for (int i= 0; i < partitions.length; i++) {
+			for (int j= 0; j < pairs.length; j++) {
+				this.tracks[i][j]= new Track();
+			}
+		}
+		
+		this.document.addDocumentListener(this.listener);
+		this.document.addDocumentPartitioningListener(this.listener);
+		this.connected= true;
+		this.stamp= getModificationStamp();
+		this.dirtyStart= 0;
+		this.dirtyEnd= document.getLength();
+	}
+	
+	
+	public final IDocument getDocument() {
+		return this.document;
+	}
+	
+	public void dispose() {
+		if (this.connected) {
+			this.connected= false;
+			this.document.removeDocumentListener(this.listener);
+			this.document.removeDocumentPartitioningListener(this.listener);
+		}
+	}
+	
+	
+	private long getModificationStamp() {
+		return (this.document instanceof IDocumentExtension4) ?
+				((IDocumentExtension4) this.document).getModificationStamp() :
+				IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	}
+	
+	private void addDirtyRegion(final int start, final int end) {
+		if (this.dirtyStart < 0) {
+			this.dirtyStart= start;
+			this.dirtyEnd= end;
+		}
+		else {
+			this.dirtyStart= Math.min(this.dirtyStart, start);
+			this.dirtyEnd= Math.max(this.dirtyEnd, end);
+		}
+	}
+	
+	private void addPendingRegion(final int start, final int end) {
+		if (this.pendingStart < 0) {
+			this.pendingStart= start;
+			this.pendingEnd= end;
+		}
+		else {
+			this.pendingStart= Math.min(this.pendingStart, start);
+			this.pendingEnd= Math.max(this.pendingEnd, end);
+		}
+	}
+	
+	private void onDocumentChanged(final DocumentEvent event) {
+		final int offset= event.getOffset();
+		final int oldEnd= offset + event.getLength();
+		final int textLength= (event.getText() != null) ? event.getText().length() : 0;
+		final int delta= textLength - event.getLength();
+		
+		for (final Track[] partitionTracks : this.tracks) {
+			for (final Track track : partitionTracks) {
+				track.removeRange(offset, oldEnd);
+				if (delta != 0) {
+					track.shift(oldEnd, delta);
+				}
+			}
+		}
+		if (this.dirtyStart >= 0) {
+			if (this.dirtyStart > offset) {
+				this.dirtyStart= (this.dirtyStart >= oldEnd) ? this.dirtyStart + delta : offset;
+			}
+			if (this.dirtyEnd > offset) {
+				this.dirtyEnd= (this.dirtyEnd >= oldEnd) ? this.dirtyEnd + delta : offset + textLength;
+			}
+		}
+		addDirtyRegion(offset, offset + textLength);
+		if (this.pendingStart >= 0) {
+			addDirtyRegion(this.pendingStart, this.pendingEnd);
+			this.pendingStart= -1;
+		}
+		this.stamp= getModificationStamp();
+	}
+	
+	/**
+	 * Checks if the index is valid and rescans the dirty region if required.
+	 *
+	 * @return <code>true</code> if the index can be used
+	 */
+	private boolean update() {
+		if (!this.connected || this.inChange) {
+			return false;
+		}
+		final long currentStamp= getModificationStamp();
+		if (currentStamp == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP
+				|| currentStamp != this.stamp) {
+			return false;
+		}
+		if (this.dirtyStart >= 0) {
+			try {
+				rescan();
+			}
+			catch (final BadLocationException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private boolean isEscapeChar(final char c) {
+		for (int i= 0; i < this.escapeChars.length; i++) {
+			if (this.escapeChars[i] == c && c != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private void rescan() throws BadLocationException {
+		final IDocument document= this.document;
+		final int length= document.getLength();
+		final int start= Math.max(this.dirtyStart, 0);
+		int end= Math.min(this.dirtyEnd, length);
+		// escape chars at the end change the peers behind
+		while (end < length && isEscapeChar(document.getChar(end))) {
+			end++;
+		}
+		if (end < length) {
+			end++;
+		}
+		
+		for (final Track[] partitionTracks : this.tracks) {
+			for (final Track track : partitionTracks) {
+				track.beginReplace(start, end);
+			}
+		}
+		try {
+			final ITypedRegion[] regions= TextUtilities.computePartitioning(document,
+					this.partitioning, start, end - start, false );
+			for (final ITypedRegion region : regions) {
+				final int partitionIdx= indexOfPartition(region.getType());
+				if (partitionIdx < 0) {
+					continue;
+				}
+				final int regionStart= Math.max(region.getOffset(), start);
+				final int regionEnd= Math.min(region.getOffset() + region.getLength(), end);
+				if (regionStart >= regionEnd) {
+					continue;
+				}
+				scan(partitionIdx, region.getOffset(), regionStart,
+						document.get(regionStart, regionEnd - regionStart) );
+			}
+		}
+		finally {
+			for (final Track[] partitionTracks : this.tracks) {
+				for (final Track track : partitionTracks) {
+					track.endReplace();
+				}
+			}
+		}
+		this.dirtyStart= -1;
+	}
+	
+	private int indexOfPartition(final String type) {
+		for (int i= 0; i < this.partitions.length; i++) {
+			if (this.partitions[i] == type) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	private void scan(final int partitionIdx, final int partitionOffset,
+			final int textOffset, final String text) throws BadLocationException {
+		final Track[] partitionTracks= this.tracks[partitionIdx];
+		final char escapeChar= this.escapeChars[partitionIdx];
+		final char[][] pairs= this.pairs;
+		final int length= text.length();
+		int escapeCount= 0;
+		if (escapeChar != 0) {
+			int offset= textOffset - 1;
+			while (offset >= partitionOffset && this.document.getChar(offset) == escapeChar) {
+				escapeCount++;
+				offset--;
+			}
+		}
+		for (int i= 0; i < length; i++) {
+			final char c= text.charAt(i);
+			if (escapeChar != 0 && c == escapeChar) {
+				escapeCount++;
+				continue;
+			}
+			if ((escapeCount & 1) == 0) {
+				for (int j= 0; j < pairs.length; j++) {
+					if (c == pairs[j][OPENING_PEER]) {
+						partitionTracks[j].add(textOffset + i, true);
+						break;
+					}
+					if (c == pairs[j][CLOSING_PEER]) {
+						partitionTracks[j].add(textOffset + i, false);
+						break;
+					}
+				}
+			}
+			escapeCount= 0;
+		}
+	}
+	
+	
+	/**
+	 * Returns the position of the closing peer, see
+	 * {@link ITokenScanner#findClosingPeer(int, char[], char)}.
+	 *
+	 * @param partitionType the partition type to scan in
+	 * @param pairIdx the index of the pair
+	 * @param start the start position (behind the opening peer)
+	 * @return the position of the closing peer, {@link ITokenScanner#NOT_FOUND} or
+	 *     {@link #NOT_AVAILABLE} if the index is not valid
+	 */
+	public int findClosingPeer(final String partitionType, final int pairIdx, final int start) {
+		final int partitionIdx= indexOfPartition(partitionType);
+		if (partitionIdx < 0 || !update()) {
+			return NOT_AVAILABLE;
+		}
+		return this.tracks[partitionIdx][pairIdx].findClosing(start);
+	}
+	
+	/**
+	 * Returns the position of the opening peer, see
+	 * {@link ITokenScanner#findOpeningPeer(int, char[], char)}.
+	 *
+	 * @param partitionType the partition type to scan in
+	 * @param pairIdx the index of the pair
+	 * @param start the start position (before the closing peer)
+	 * @return the position of the opening peer, {@link ITokenScanner#NOT_FOUND} or
+	 *     {@link #NOT_AVAILABLE} if the index is not valid
+	 */
+	public int findOpeningPeer(final String partitionType, final int pairIdx, int start) {
+		final int partitionIdx= indexOfPartition(partitionType);
+		if (partitionIdx < 0 || !update()) {
+			return NOT_AVAILABLE;
+		}
+		if (start >= this.document.getLength()) {
+			start= this.document.getLength() - 1;
+		}
+		if (start < 0) {
+			return NOT_FOUND;
+		}
+		return this.tracks[partitionIdx][pairIdx].findOpening(start);
+	}
+	
+}
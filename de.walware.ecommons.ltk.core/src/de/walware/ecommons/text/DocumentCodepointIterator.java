@@ -11,10 +11,24 @@
 
 package de.walware.ecommons.text;
 
+import java.util.Arrays;
+
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
 
+import de.walware.ecommons.text.core.rules.IDocumentCharAccess;
+
 
+/**
+ * Code point iterator for a jface document.
+ * <p>
+ * The chars are read in fragments into a reusable array. If the document implements
+ * {@link IDocumentCharAccess}, all chars are copied without creating strings. No document
+ * type implements it by default, so for other documents the String path remains the default:
+ * long ranges requested by bulk operations are read by {@link IDocument#get(int, int)}. Only the
+ * fragments are filled char by char ({@link IDocument#getChar(int)}) to avoid a string for each
+ * refill.</p>
+ */
 public class DocumentCodepointIterator extends CharCodepointIterator {
 	
 	
@@ -55,45 +69,98 @@ public class DocumentCodepointIterator extends CharCodepointIterator {
 	
 	
 	private final IDocument fDocument;
+	private final IDocumentCharAccess fDocumentCharAccess;
 	
 	private int fFragmentOffset;
-	private String fFragment;
+	private final char[] fFragment;
+	private int fFragmentLength;
 	
 	
 	protected DocumentCodepointIterator(final IDocument doc,
 			final int beginIndex, final int endIndex) throws BadLocationException {
 		super(beginIndex, endIndex);
 		fDocument = doc;
+		fDocumentCharAccess = (doc instanceof IDocumentCharAccess) ?
+				(IDocumentCharAccess) doc : null;
 		
 		fFragmentOffset = Integer.MIN_VALUE;
+		fFragment = new char[FRAGMENT_LENGTH];
 	}
 	
 	
 	@Override
 	protected char getChar(final int offset, final byte prepare) {
 		int offsetInFragment = offset - fFragmentOffset;
-		if (offsetInFragment < 0 || offsetInFragment >= FRAGMENT_LENGTH) {
-			if ((prepare & PREPARE_FORWARD) != 0 ||
-					(prepare & PREPARE_FORWARD) == 0 && offset < fFragmentOffset) {
-				fFragmentOffset = Math.max(offset - FRAGMENT_LENGTH + FRAGMENT_ADDITION,
-						getBeginIndex() );
+		if (offsetInFragment < 0 || offsetInFragment >= fFragmentLength) {
+			if (!loadFragment(offset, prepare)) {
+				return (char) EOF;
+			}
+			offsetInFragment = offset - fFragmentOffset;
+		}
+		return fFragment[offsetInFragment];
+	}
+	
+	private boolean loadFragment(final int offset, final byte prepare) {
+		if ((prepare & PREPARE_BACKWARD) != 0 ||
+				(prepare & PREPARE_FORWARD) == 0 && offset < fFragmentOffset) {
+			fFragmentOffset = Math.max(offset - FRAGMENT_LENGTH + FRAGMENT_ADDITION,
+					getBeginIndex() );
+		}
+		else {
+			fFragmentOffset = Math.max(offset - FRAGMENT_ADDITION,
+					getBeginIndex() );
+		}
+		fFragmentLength = Math.min(FRAGMENT_LENGTH, getEndIndex() - fFragmentOffset);
+		try {
+			if (fDocumentCharAccess != null) {
+				fDocumentCharAccess.getChars(fFragmentOffset, fFragmentLength, fFragment, 0);
 			}
 			else {
-				fFragmentOffset = Math.max(offset - FRAGMENT_ADDITION,
-						getBeginIndex() );
+				for (int i = 0; i < fFragmentLength; i++) {
+					fFragment[i] = fDocument.getChar(fFragmentOffset + i);
+				}
 			}
+			return true;
+		}
+		catch (final BadLocationException e) {
+			fFragmentOffset = Integer.MIN_VALUE;
+			fFragmentLength = 0;
+			return false;
+		}
+	}
+	
+	@Override
+	protected void copyChars(final int beginIndex, final int endIndex,
+			final char[] dest, final int destIndex, final byte prepare) {
+		final int length = endIndex - beginIndex;
+		if (length == 0) {
+			return;
+		}
+		if (length > FRAGMENT_LENGTH - FRAGMENT_ADDITION) {
 			try {
-				fFragment = fDocument.get(fFragmentOffset, Math.min(FRAGMENT_LENGTH, 
-						getEndIndex() - fFragmentOffset ));
-				offsetInFragment = offset - fFragmentOffset;
+				readChars(beginIndex, length, dest, destIndex);
 			}
 			catch (final BadLocationException e) {
-				fFragmentOffset = Integer.MIN_VALUE;
-				fFragment = null;
-				return (char) EOF;
+				Arrays.fill(dest, destIndex, destIndex + length, (char) EOF);
 			}
+			return;
+		}
+		if ((beginIndex < fFragmentOffset || endIndex > fFragmentOffset + fFragmentLength)
+				&& !loadFragment(((prepare & PREPARE_BACKWARD) != 0) ? endIndex - 1 : beginIndex, prepare) ) {
+			Arrays.fill(dest, destIndex, destIndex + length, (char) EOF);
+			return;
+		}
+		System.arraycopy(fFragment, beginIndex - fFragmentOffset, dest, destIndex, length);
+	}
+	
+	private void readChars(final int offset, final int length,
+			final char[] dest, final int destIndex) throws BadLocationException {
+		if (fDocumentCharAccess != null) {
+			fDocumentCharAccess.getChars(offset, length, dest, destIndex);
+		}
+		else {
+			fDocument.get(offset, length).getChars(0, length, dest, destIndex);
 		}
-		return fFragment.charAt(offsetInFragment);
 	}
 	
 	
@@ -11,9 +11,6 @@
 
 package de.walware.ecommons.text;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentPartitioner;
@@ -21,6 +18,15 @@ import org.eclipse.jface.text.ITypedRegion;
 import org.eclipse.jface.text.TypedRegion;
 
 
+/**
+ * Document partitioner with partitions specified explicitly by {@link #append(String, int)}.
+ * <p>
+ * The partitions are stored in primitive arrays and looked up by binary search. Document
+ * changes inside the partitioned range are applied to the partitions: a deleted range is removed
+ * from the partitions (partitions of the same type becoming adjacent are merged) and inserted
+ * text is added to the partition at the offset of the change. Text appended at the end of the
+ * document must be partitioned by {@link #append(String, int)}.</p>
+ */
 public class FixDocumentPartitioner implements IDocumentPartitioner {
 	
 	
@@ -28,7 +34,10 @@ public class FixDocumentPartitioner implements IDocumentPartitioner {
 	
 	private IDocument document;
 	
-	private final List<ITypedRegion> partitions= new ArrayList<>();
+	private int size;
+	private int[] starts= new int[16];
+	private int[] ends= new int[16];
+	private String[] types= new String[16];
 	
 	
 	public FixDocumentPartitioner(final String[] contentTypes) {
@@ -37,22 +46,53 @@ public class FixDocumentPartitioner implements IDocumentPartitioner {
 	
 	
 	public void append(final String contentType, final int length) {
-		if (this.partitions.isEmpty()) {
-			this.partitions.add(new TypedRegion(0, length, contentType));
+		if (this.size == 0) {
+			add(0, length, contentType);
 		}
 		else {
-			final ITypedRegion previous= this.partitions.get(this.partitions.size() - 1);
-			if (previous.getType() == contentType) {
-				this.partitions.set(this.partitions.size() - 1, new TypedRegion(
-						previous.getOffset(), previous.getLength() + length, contentType ));
+			final int last= this.size - 1;
+			if (this.types[last] == contentType) {
+				this.ends[last]+= length;
 			}
 			else {
-				this.partitions.add(new TypedRegion(
-						previous.getOffset() + previous.getLength(), length, contentType ));
+				add(this.ends[last], this.ends[last] + length, contentType);
 			}
 		}
 	}
 	
+	private void add(final int start, final int end, final String contentType) {
+		if (this.size == this.starts.length) {
+			final int capacity= this.size * 2;
+			final int[] newStarts= new int[capacity];
+			final int[] newEnds= new int[capacity];
+			final String[] newTypes= new String[capacity];
+			System.arraycopy(this.starts, 0, newStarts, 0, this.size);
+			System.arraycopy(this.ends, 0, newEnds, 0, this.size);
+			System.arraycopy(this.types, 0, newTypes, 0, this.size);
+			this.starts= newStarts;
+			this.ends= newEnds;
+			this.types= newTypes;
+		}
+		this.starts[this.size]= start;
+		this.ends[this.size]= end;
+		this.types[this.size]= contentType;
+		this.size++;
+	}
+	
+	private void remove(final int fromIdx, final int toIdx) {
+		final int count= toIdx - fromIdx;
+		if (count <= 0) {
+			return;
+		}
+		System.arraycopy(this.starts, toIdx, this.starts, fromIdx, this.size - toIdx);
+		System.arraycopy(this.ends, toIdx, this.ends, fromIdx, this.size - toIdx);
+		System.arraycopy(this.types, toIdx, this.types, fromIdx, this.size - toIdx);
+		this.size-= count;
+		for (int i= this.size; i < this.size + count; i++) {
+			this.types[i]= null;
+		}
+	}
+	
 	@Override
 	public void connect(final IDocument document) {
 		this.document= document;
@@ -69,51 +109,158 @@ public class FixDocumentPartitioner implements IDocumentPartitioner {
 	
 	@Override
 	public boolean documentChanged(final DocumentEvent event) {
+		if (this.size == 0) {
+			return true;
+		}
+		final int textLength= (event.getText() != null) ? event.getText().length() : 0;
+		final int oldDocumentLength= event.getDocument().getLength() - textLength + event.getLength();
+		final int offset= event.getOffset();
+		if (offset >= oldDocumentLength || offset > this.ends[this.size - 1]) {
+			// appended text (see #append)
+			return true;
+		}
+		final int deleteEnd= Math.min(offset + event.getLength(), this.ends[this.size - 1]);
+		if (deleteEnd > offset) {
+			delete(offset, deleteEnd);
+		}
+		if (textLength > 0) {
+			insert(offset, textLength);
+		}
 		return true;
 	}
 	
+	private void delete(final int offset, final int end) {
+		final int length= end - offset;
+		// partitions overlapping the range: [startIdx, endIdx)
+		final int startIdx= upperBound(this.ends, 0, this.size, offset);
+		final int endIdx= lowerBound(this.starts, startIdx, this.size, end);
+		int removeIdx= -1;
+		int removeCount= 0;
+		for (int i= startIdx; i < endIdx; i++) {
+			if (this.starts[i] > offset) {
+				this.starts[i]= offset;
+			}
+			this.ends[i]= (this.ends[i] >= end) ? this.ends[i] - length : offset;
+			if (this.starts[i] == this.ends[i]) {
+				if (removeIdx < 0) {
+					removeIdx= i;
+				}
+				removeCount++;
+			}
+		}
+		for (int i= endIdx; i < this.size; i++) {
+			this.starts[i]-= length;
+			this.ends[i]-= length;
+		}
+		if (removeCount > 0) {
+			if (removeCount == this.size) {
+				// keep an empty partition
+				removeIdx++;
+				removeCount--;
+			}
+			// the removed partitions are consecutive
+			remove(removeIdx, removeIdx + removeCount);
+			if (removeIdx > 0 && removeIdx < this.size
+					&& this.types[removeIdx - 1] == this.types[removeIdx]) {
+				this.ends[removeIdx - 1]= this.ends[removeIdx];
+				remove(removeIdx, removeIdx + 1);
+			}
+		}
+	}
+	
+	private void insert(final int offset, final int length) {
+		int idx= lowerBound(this.ends, 0, this.size, offset);
+		if (idx == this.size) {
+			idx= this.size - 1;
+		}
+		this.ends[idx]+= length;
+		for (int i= idx + 1; i < this.size; i++) {
+			this.starts[i]+= length;
+			this.ends[i]+= length;
+		}
+	}
+	
 	@Override
 	public String[] getLegalContentTypes() {
 		return this.contentTypes;
 	}
 	
+	/**
+	 * Returns the index of the first value in [from, to) &gt;= key.
+	 */
+	private static int lowerBound(final int[] values, int from, int to, final int key) {
+		while (from < to) {
+			final int mid= (from + to) >>> 1;
+			if (values[mid] < key) {
+				from= mid + 1;
+			}
+			else {
+				to= mid;
+			}
+		}
+		return from;
+	}
+	
+	/**
+	 * Returns the index of the first value in [from, to) &gt; key.
+	 */
+	private static int upperBound(final int[] values, int from, int to, final int key) {
+		while (from < to) {
+			final int mid= (from + to) >>> 1;
+			if (values[mid] <= key) {
+				from= mid + 1;
+			}
+			else {
+				to= mid;
+			}
+		}
+		return from;
+	}
+	
 	private int indexOf(final int offset, final boolean prefereOpen) {
-		final int last= this.partitions.size() - 1;
-		int i= 0;
+		final int last= this.size - 1;
 		if (prefereOpen) {
-			for (; i < last; i++) {
-				final ITypedRegion partition= this.partitions.get(i);
-				if (offset < partition.getOffset() + partition.getLength()) {
-					return i;
-				}
+			final int i= upperBound(this.ends, 0, last, offset);
+			if (i < last) {
+				return i;
+			}
+			// last
+			if (last >= 0 && offset <= this.ends[last]) {
+				return last;
 			}
 		}
-		// last or prefereOpen
-		for (; i <= last; i++) {
-			final ITypedRegion partition= this.partitions.get(i);
-			if (offset <= partition.getOffset() + partition.getLength()) {
+		else {
+			final int i= lowerBound(this.ends, 0, this.size, offset);
+			if (i <= last) {
 				return i;
 			}
 		}
 		throw new IndexOutOfBoundsException("offset: " + Integer.toString(offset)); //$NON-NLS-1$
 	}
 	
+	private ITypedRegion createRegion(final int idx) {
+		return new TypedRegion(this.starts[idx], this.ends[idx] - this.starts[idx], this.types[idx]);
+	}
+	
 	@Override
 	public String getContentType(final int offset) {
-		return this.partitions.get(indexOf(offset, false)).getType();
+		return this.types[indexOf(offset, false)];
 	}
 	
 	@Override
 	public ITypedRegion[] computePartitioning(final int offset, final int length) {
 		final int startIdx= indexOf(offset, false);
 		final int endIdx= indexOf(offset + length, true);
-		final List<ITypedRegion> list= this.partitions.subList(startIdx, endIdx);
-		return list.toArray(new ITypedRegion[list.size()]);
+		final ITypedRegion[] regions= new ITypedRegion[Math.max(endIdx - startIdx, 0)];
+		for (int i= 0; i < regions.length; i++) {
+			regions[i]= createRegion(startIdx + i);
+		}
+		return regions;
 	}
 	
 	@Override
 	public ITypedRegion getPartition(final int offset) {
-		return this.partitions.get(indexOf(offset, false));
+		return createRegion(indexOf(offset, false));
 	}
 	
 }
@@ -11,6 +11,8 @@
 
 package de.walware.ecommons.text;
 
+import java.util.function.IntPredicate;
+
 import org.eclipse.jface.text.BadLocationException;
 
 
@@ -137,4 +139,58 @@ public interface ICodepointIterator {
 	 */
 	int getCurrentLength();
 	
+	
+	/**
+	 * Moves the iterator forward while the code point at the current position matches the
+	 * predicate.
+	 * 
+	 * The iterator stops at the first code point not matching the predicate or at
+	 * {@link #getEndIndex()}.
+	 * 
+	 * @param predicate the predicate for the code points to skip
+	 * @return the code point at the new position or {@link #EOF}
+	 */
+	default int skipForward(final IntPredicate predicate) {
+		int cp = current();
+		while (cp != EOF && predicate.test(cp)) {
+			cp = next();
+		}
+		return cp;
+	}
+	
+	/**
+	 * Moves the iterator backward while the code point before the current position matches the
+	 * predicate.
+	 * 
+	 * The iterator stops at the first code point of the matching code points, that is behind
+	 * the first code point not matching the predicate or at {@link #getBeginIndex()}. If the code
+	 * point before the current position doesn't match, the position is unchanged.
+	 * 
+	 * @param predicate the predicate for the code points to skip
+	 * @return the code point at the new position or {@link #EOF}
+	 */
+	default int skipBackward(final IntPredicate predicate) {
+		final int index = getCurrentIndex();
+		int cp = previous();
+		if (cp == EOF) {
+			return current();
+		}
+		if (!predicate.test(cp)) {
+			try {
+				setIndex(index, PREPARE_FORWARD);
+			}
+			catch (final BadLocationException e) {
+				throw new IllegalStateException(e);
+			}
+			return current();
+		}
+		while (getCurrentIndex() > getBeginIndex()) {
+			cp = previous();
+			if (!predicate.test(cp)) {
+				return next();
+			}
+		}
+		return cp;
+	}
+	
 }
@@ -12,11 +12,20 @@
 package de.walware.ecommons.text;
 
 import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentRewriteSession;
+import org.eclipse.jface.text.DocumentRewriteSessionType;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.osgi.util.NLS;
+import org.eclipse.text.edits.MalformedTreeException;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+import org.eclipse.text.edits.TextEdit;
 
 import de.walware.ecommons.text.IIndentSettings.IndentationType;
 import de.walware.ecommons.text.core.ITextRegion;
@@ -141,12 +150,71 @@ public class IndentUtil {
 	}
 	
 	
+	/**
+	 * Source of the chars of lines to edit.
+	 * <p>
+	 * Returns -1 at the begin and end of the document, like {@link IndentUtil#getDocumentChar(int)}.
+	 * </p>
+	 */
+	private static interface CharSource {
+		
+		int get(int offset) throws BadLocationException;
+		
+	}
+	
+	/**
+	 * Snapshot of the text of a range of lines (including the line delimiter of the last line).
+	 */
+	private static final class TextSnapshot implements CharSource {
+		
+		private final String text;
+		private final int textOffset;
+		
+		public TextSnapshot(final String text, final int textOffset) {
+			this.text= text;
+			this.textOffset= textOffset;
+		}
+		
+		@Override
+		public int get(final int offset) {
+			final int idx= offset - this.textOffset;
+			return (idx >= 0 && idx < this.text.length()) ? this.text.charAt(idx) : -1;
+		}
+		
+		public boolean regionMatches(final int offset, final int length, final CharSequence s) {
+			if (length != s.length()) {
+				return false;
+			}
+			final int idx= offset - this.textOffset;
+			for (int i= 0; i < length; i++) {
+				if (this.text.charAt(idx + i) != s.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+	}
+	
 	private static interface EditStrategy {
 		
-		public void editInIndent(int firstLine, int lastLine, IndentEditAction action)
+		/**
+		 * Computes the edit of a line to prepare the indentation.
+		 * 
+		 * @return the length of the text to replace by <code>replacement</code>,
+		 *     or -1 if the line doesn't require changes
+		 */
+		public int computeEditInIndent(CharSource chars, int lineOffset, int indentColumn,
+				StringBuilder replacement)
 				throws BadLocationException;
 		
-		public void changeIndent(final int firstLine, final int lastLine, IndentEditAction action)
+		/**
+		 * Computes the edit of a line to change the indentation.
+		 * 
+		 * @return the length of the text to replace by <code>replacement</code>
+		 */
+		public int computeChangeIndent(CharSource chars, int lineOffset, int indentColumn,
+				StringBuilder replacement)
 				throws BadLocationException;
 		
 		public String copyLineIndent(int line) 
@@ -157,132 +225,112 @@ public class IndentUtil {
 	private class ConserveStrategy implements EditStrategy {
 		
 		@Override
-		public void editInIndent(final int firstLine, final int lastLine, final IndentEditAction action)
-				throws BadLocationException {
-			final StringBuilder replacement= new StringBuilder(20);
-			ITER_LINES : for (int line= firstLine; line <= lastLine; line++) {
-				final IRegion lineInfo= IndentUtil.this.document.getLineInformation(line);
-				final int indentColumn= action.getIndentColumn(line, lineInfo.getOffset());
-				if (indentColumn < 0) {
-					continue ITER_LINES;
-				}
-				if (indentColumn > 0) {
-					replacement.setLength(0);
-					int indentation= 0;
-					int offset= lineInfo.getOffset();
-					boolean changed= false;
-					
-					ITER_CHARS : while (indentation < indentColumn) {
-						final int c= getDocumentChar(offset);
-						int tabStart, tabEnd, spaceCount;
-						switch (c) {
-						case ' ':
-							indentation++;
-							offset++;
-							replacement.append(' ');
-							continue ITER_CHARS;
-						case '\t':
-							tabStart= (indentation/IndentUtil.this.tabWidth) * IndentUtil.this.tabWidth;
-							tabEnd= tabStart + IndentUtil.this.tabWidth;
-							if (tabEnd > indentColumn) {
-								spaceCount= tabEnd - indentation;
-								replacement.append(repeat(' ', spaceCount));
-								changed= true;
-							}
-							else {
-								replacement.append('\t');
-							}
-							indentation= tabEnd;
-							offset++;
-							continue ITER_CHARS;
-						case '\r':
-						case '\n':
-						case -1:
-							tabStart= (indentation/IndentUtil.this.tabWidth) * IndentUtil.this.tabWidth;
-							tabEnd= tabStart + IndentUtil.this.tabWidth;
-							if (IndentUtil.this.tabAsDefault && (tabEnd <= indentColumn)) {
-								spaceCount= indentation-tabStart;
-								replacement.delete(replacement.length()-spaceCount, replacement.length());
-								replacement.append('\t');
-								indentation= tabEnd;
-								changed= true;
-							}
-							else {
-								spaceCount= indentColumn-indentation;
-								replacement.append(repeat(' ', spaceCount));
-								indentation+= spaceCount;
-								changed= true;
-							}
-							continue ITER_CHARS;
-						default:
-							throw new IllegalArgumentException(createNoIndentationCharMessage(c));
-						}
-					}
-					if (changed) {
-						action.doEdit(line, lineInfo.getOffset(), offset-lineInfo.getOffset(), replacement);
-						continue ITER_LINES;
-					}
-				}
-				action.doEdit(line, lineInfo.getOffset(), 0, null);
-				continue ITER_LINES;
-			}
-		}
-		
-		@Override
-		public void changeIndent(final int firstLine, final int lastLine, final IndentEditAction action)
+		public int computeEditInIndent(final CharSource chars, final int lineOffset, final int indentColumn,
+				final StringBuilder replacement)
 				throws BadLocationException {
-			final StringBuilder replacement= new StringBuilder(20);
-			ITER_LINES : for (int line= firstLine; line <= lastLine; line++) {
-				final IRegion lineInfo= IndentUtil.this.document.getLineInformation(line);
-				final int indentColumn= action.getIndentColumn(line, lineInfo.getOffset());
-				if (indentColumn < 0) {
-					continue ITER_LINES;
-				}
-				replacement.setLength(0);
-				int column= 0;
-				int offset= lineInfo.getOffset();
+			if (indentColumn > 0) {
+				int indentation= 0;
+				int offset= lineOffset;
+				boolean changed= false;
 				
-				ITER_CHARS : while (column < indentColumn) {
-					final int c= getDocumentChar(offset);
+				ITER_CHARS : while (indentation < indentColumn) {
+					final int c= chars.get(offset);
 					int tabStart, tabEnd, spaceCount;
 					switch (c) {
 					case ' ':
-						column++;
+						indentation++;
 						offset++;
 						replacement.append(' ');
 						continue ITER_CHARS;
 					case '\t':
-						tabStart= (column/IndentUtil.this.tabWidth) * IndentUtil.this.tabWidth;
+						tabStart= (indentation/IndentUtil.this.tabWidth) * IndentUtil.this.tabWidth;
 						tabEnd= tabStart + IndentUtil.this.tabWidth;
 						if (tabEnd > indentColumn) {
-							spaceCount= indentColumn - column;
+							spaceCount= tabEnd - indentation;
 							replacement.append(repeat(' ', spaceCount));
-							column= indentColumn;
+							changed= true;
 						}
 						else {
 							replacement.append('\t');
-							column= tabEnd;
 						}
+						indentation= tabEnd;
 						offset++;
 						continue ITER_CHARS;
+					case '\r':
+					case '\n':
+					case -1:
+						tabStart= (indentation/IndentUtil.this.tabWidth) * IndentUtil.this.tabWidth;
+						tabEnd= tabStart + IndentUtil.this.tabWidth;
+						if (IndentUtil.this.tabAsDefault && (tabEnd <= indentColumn)) {
+							spaceCount= indentation-tabStart;
+							replacement.delete(replacement.length()-spaceCount, replacement.length());
+							replacement.append('\t');
+							indentation= tabEnd;
+							changed= true;
+						}
+						else {
+							spaceCount= indentColumn-indentation;
+							replacement.append(repeat(' ', spaceCount));
+							indentation+= spaceCount;
+							changed= true;
+						}
+						continue ITER_CHARS;
 					default:
-						break ITER_CHARS;
+						throw new IllegalArgumentException(createNoIndentationCharMessage(c));
 					}
 				}
-				ITER_CHARS : while (true) {
-					final int c= getDocumentChar(offset);
-					if (c != ' ' && c != '\t') {
-						break ITER_CHARS;
+				if (changed) {
+					return offset-lineOffset;
+				}
+			}
+			return -1;
+		}
+		
+		@Override
+		public int computeChangeIndent(final CharSource chars, final int lineOffset, final int indentColumn,
+				final StringBuilder replacement)
+				throws BadLocationException {
+			int column= 0;
+			int offset= lineOffset;
+			
+			ITER_CHARS : while (column < indentColumn) {
+				final int c= chars.get(offset);
+				int tabStart, tabEnd, spaceCount;
+				switch (c) {
+				case ' ':
+					column++;
+					offset++;
+					replacement.append(' ');
+					continue ITER_CHARS;
+				case '\t':
+					tabStart= (column/IndentUtil.this.tabWidth) * IndentUtil.this.tabWidth;
+					tabEnd= tabStart + IndentUtil.this.tabWidth;
+					if (tabEnd > indentColumn) {
+						spaceCount= indentColumn - column;
+						replacement.append(repeat(' ', spaceCount));
+						column= indentColumn;
+					}
+					else {
+						replacement.append('\t');
+						column= tabEnd;
 					}
 					offset++;
+					continue ITER_CHARS;
+				default:
+					break ITER_CHARS;
 				}
-				if (column < indentColumn) {
-					appendIndent(replacement, column, indentColumn);
+			}
+			ITER_CHARS : while (true) {
+				final int c= chars.get(offset);
+				if (c != ' ' && c != '\t') {
+					break ITER_CHARS;
 				}
-				
-				action.doEdit(line, lineInfo.getOffset(), offset-lineInfo.getOffset(), replacement);
-				continue ITER_LINES;
+				offset++;
 			}
+			if (column < indentColumn) {
+				appendIndent(replacement, column, indentColumn);
+			}
+			return offset-lineOffset;
 		}
 		
 		@Override
@@ -309,43 +357,24 @@ public class IndentUtil {
 	private class CorrectStrategy implements EditStrategy {
 		
 		@Override
-		public void editInIndent(final int firstLine, final int lastLine, final IndentEditAction action)
+		public int computeEditInIndent(final CharSource chars, final int lineOffset, final int indentColumn,
+				final StringBuilder replacement)
 				throws BadLocationException {
-			final StringBuilder replacement= new StringBuilder(20);
-			ITER_LINES : for (int line= firstLine; line <= lastLine; line++) {
-				final int lineOffset= IndentUtil.this.document.getLineOffset(line);
-				final int indentColumn= action.getIndentColumn(line, lineOffset);
-				if (indentColumn < 0) {
-					continue ITER_LINES;
-				}
-				final int[] current= getLineIndent(line, true);
-				replacement.setLength(0);
-				appendIndent(replacement, indentColumn);
-				if (current[COLUMN_IDX] >= 0) {
-					appendSpaces(replacement, current[COLUMN_IDX]-indentColumn);
-				}
-				action.doEdit(line, lineOffset, current[OFFSET_IDX]-lineOffset, replacement);
-				continue ITER_LINES;
+			final int[] current= getLineIndent(chars, lineOffset, true);
+			appendIndent(replacement, indentColumn);
+			if (current[COLUMN_IDX] >= 0) {
+				appendSpaces(replacement, current[COLUMN_IDX]-indentColumn);
 			}
+			return current[OFFSET_IDX]-lineOffset;
 		}
 		
 		@Override
-		public void changeIndent(final int firstLine, final int lastLine, final IndentEditAction action)
+		public int computeChangeIndent(final CharSource chars, final int lineOffset, final int indentColumn,
+				final StringBuilder replacement)
 				throws BadLocationException {
-			final StringBuilder replacement= new StringBuilder(20);
-			ITER_LINES : for (int line= firstLine; line <= lastLine; line++) {
-				final int lineOffset= IndentUtil.this.document.getLineOffset(line);
-				final int indentColumn= action.getIndentColumn(line, lineOffset);
-				if (indentColumn < 0) {
-					continue ITER_LINES;
-				}
-				final int[] current= getLineIndent(line, false);
-				replacement.setLength(0);
-				appendIndent(replacement, indentColumn);
-				action.doEdit(line, lineOffset, current[OFFSET_IDX]-lineOffset, replacement);
-				continue ITER_LINES;
-			}
-			
+			final int[] current= getLineIndent(chars, lineOffset, false);
+			appendIndent(replacement, indentColumn);
+			return current[OFFSET_IDX]-lineOffset;
 		}
 		
 		@Override
@@ -372,12 +401,28 @@ public class IndentUtil {
 	}
 	
 	
+	/** Minimum number of lines to compute the edits of a batch in parallel */
+	private static final int BATCH_PARALLEL_LINES= 0x2000;
+	
+	/** Minimum number of edits to apply a batch in a document rewrite session */
+	private static final int BATCH_REWRITE_SESSION_EDITS= 0x100;
+	
+	
+	private final CharSource documentChars= new CharSource() {
+		@Override
+		public int get(final int offset) throws BadLocationException {
+			return getDocumentChar(offset);
+		}
+	};
+	
 	private final IDocument document;
 	private final int tabWidth;
 	private final boolean tabAsDefault;
 	private final int numOfSpaces;
 	private final EditStrategy editStrategy;
 	
+	private LineIndentCache indentCache;
+	
 	
 //	public IndentUtil(final IDocument document, final booeditStrategy,
 //			final boolean tabsAsDefault, final int tabWidth, final int numOfSpaces) {
@@ -423,11 +468,20 @@ public class IndentUtil {
 	 */
 	@Deprecated
 	public int[] getLineIndent(final int line, final boolean markBlankLine) throws BadLocationException {
-		final IRegion lineInfo= this.document.getLineInformation(line);
+		final LineIndentCache cache= getIndentCache();
+		final int offset= cache.getIndentOffset(this.document, line, this.tabWidth);
+		if (markBlankLine && cache.isBlank(this.document, line, this.tabWidth)) {
+			return new int[] { -1, offset };
+		}
+		return new int[] { cache.getIndentColumn(this.document, line, this.tabWidth), offset };
+	}
+	
+	private int[] getLineIndent(final CharSource chars, final int lineOffset, final boolean markBlankLine)
+			throws BadLocationException {
 		int column= 0;
-		int offset= lineInfo.getOffset();
+		int offset= lineOffset;
 		ITERATE_CHAR : while (true) {
-			final int c= getDocumentChar(offset++);
+			final int c= chars.get(offset++);
 			switch (c) {
 			case ' ':
 				column++;
@@ -509,12 +563,181 @@ public class IndentUtil {
 	 */
 	public void editInIndent(final int firstLine, final int lastLine, final IndentEditAction action)
 			throws BadLocationException {
-		this.editStrategy.editInIndent(firstLine, lastLine, action);
+		final StringBuilder replacement= new StringBuilder(20);
+		ITER_LINES : for (int line= firstLine; line <= lastLine; line++) {
+			final int lineOffset= this.document.getLineOffset(line);
+			final int indentColumn= action.getIndentColumn(line, lineOffset);
+			if (indentColumn < 0) {
+				continue ITER_LINES;
+			}
+			replacement.setLength(0);
+			final int length= this.editStrategy.computeEditInIndent(this.documentChars,
+					lineOffset, indentColumn, replacement );
+			if (length >= 0) {
+				action.doEdit(line, lineOffset, length, replacement);
+			}
+			else {
+				action.doEdit(line, lineOffset, 0, null);
+			}
+		}
 	}
 	
 	public void changeIndent(final int firstLine, final int lastLine, final IndentEditAction action)
 			throws BadLocationException {
-		this.editStrategy.changeIndent(firstLine, lastLine, action);
+		final StringBuilder replacement= new StringBuilder(20);
+		ITER_LINES : for (int line= firstLine; line <= lastLine; line++) {
+			final int lineOffset= this.document.getLineOffset(line);
+			final int indentColumn= action.getIndentColumn(line, lineOffset);
+			if (indentColumn < 0) {
+				continue ITER_LINES;
+			}
+			replacement.setLength(0);
+			final int length= this.editStrategy.computeChangeIndent(this.documentChars,
+					lineOffset, indentColumn, replacement );
+			action.doEdit(line, lineOffset, length, replacement);
+		}
+	}
+	
+	/**
+	 * Computes the edits of {@link #editInIndent(int, int, IndentEditAction)} for all lines
+	 * at once.
+	 * <p>
+	 * The indent columns are requested from the action for all lines before any edit;
+	 * {@link IndentEditAction#doEdit(int, int, int, StringBuilder) doEdit} of the action is
+	 * not called. The edits replace the indentation of the lines like an action replacing
+	 * the specified region by the specified text, edits without changes are omitted.
+	 * For large ranges, the edits are computed in parallel.</p>
+	 * 
+	 * @param firstLine the index of the first line
+	 * @param lastLine the index of the last line
+	 * @param action the action providing the indent columns
+	 * @return the edit (not yet applied)
+	 * @throws BadLocationException
+	 */
+	public MultiTextEdit createEditInIndentEdit(final int firstLine, final int lastLine,
+			final IndentEditAction action) throws BadLocationException {
+		return createBatchEdit(firstLine, lastLine, action, true);
+	}
+	
+	/**
+	 * Computes the edits of {@link #changeIndent(int, int, IndentEditAction)} for all lines
+	 * at once.
+	 * <p>
+	 * The indent columns are requested from the action for all lines before any edit;
+	 * {@link IndentEditAction#doEdit(int, int, int, StringBuilder) doEdit} of the action is
+	 * not called. The edits replace the indentation of the lines like an action replacing
+	 * the specified region by the specified text, edits without changes are omitted.
+	 * For large ranges, the edits are computed in parallel.</p>
+	 * 
+	 * @param firstLine the index of the first line
+	 * @param lastLine the index of the last line
+	 * @param action the action providing the indent columns
+	 * @return the edit (not yet applied)
+	 * @throws BadLocationException
+	 */
+	public MultiTextEdit createChangeIndentEdit(final int firstLine, final int lastLine,
+			final IndentEditAction action) throws BadLocationException {
+		return createBatchEdit(firstLine, lastLine, action, false);
+	}
+	
+	/**
+	 * Applies the edit to the document of this util.
+	 * <p>
+	 * Edits with many changes are applied in a single document rewrite session.</p>
+	 * 
+	 * @param edit the edit, e.g. created by {@link #createChangeIndentEdit}
+	 * @throws BadLocationException
+	 */
+	public void applyBatchEdit(final MultiTextEdit edit) throws BadLocationException {
+		if (!edit.hasChildren()) {
+			return;
+		}
+		try {
+			if (edit.getChildrenSize() >= BATCH_REWRITE_SESSION_EDITS
+					&& this.document instanceof IDocumentExtension4) {
+				final IDocumentExtension4 document= (IDocumentExtension4) this.document;
+				final DocumentRewriteSession rewriteSession= document.startRewriteSession(
+						DocumentRewriteSessionType.STRICTLY_SEQUENTIAL );
+				try {
+					edit.apply(this.document, TextEdit.NONE);
+				}
+				finally {
+					document.stopRewriteSession(rewriteSession);
+				}
+			}
+			else {
+				edit.apply(this.document, TextEdit.NONE);
+			}
+		}
+		catch (final MalformedTreeException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+	
+	private MultiTextEdit createBatchEdit(final int firstLine, final int lastLine,
+			final IndentEditAction action, final boolean inIndent) throws BadLocationException {
+		final MultiTextEdit edit= new MultiTextEdit();
+		final int count= lastLine - firstLine + 1;
+		if (count <= 0) {
+			return edit;
+		}
+		final int[] lineOffsets= new int[count];
+		final int[] indentColumns= new int[count];
+		for (int i= 0; i < count; i++) {
+			lineOffsets[i]= this.document.getLineOffset(firstLine + i);
+			indentColumns[i]= action.getIndentColumn(firstLine + i, lineOffsets[i]);
+		}
+		final int textEnd= this.document.getLineOffset(lastLine) + this.document.getLineLength(lastLine);
+		final TextSnapshot snapshot= new TextSnapshot(
+				this.document.get(lineOffsets[0], textEnd - lineOffsets[0]), lineOffsets[0] );
+		
+		final int[] lengths= new int[count];
+		final String[] replacements= new String[count];
+		if (count >= BATCH_PARALLEL_LINES) {
+			IntStream.range(0, count).parallel().forEach(new IntConsumer() {
+				@Override
+				public void accept(final int i) {
+					computeBatchEdit(snapshot, lineOffsets[i], indentColumns[i], inIndent,
+							new StringBuilder(20), i, lengths, replacements );
+				}
+			});
+		}
+		else {
+			final StringBuilder replacement= new StringBuilder(20);
+			for (int i= 0; i < count; i++) {
+				replacement.setLength(0);
+				computeBatchEdit(snapshot, lineOffsets[i], indentColumns[i], inIndent,
+						replacement, i, lengths, replacements );
+			}
+		}
+		
+		for (int i= 0; i < count; i++) {
+			if (replacements[i] != null) {
+				edit.addChild(new ReplaceEdit(lineOffsets[i], lengths[i], replacements[i]));
+			}
+		}
+		return edit;
+	}
+	
+	private void computeBatchEdit(final TextSnapshot snapshot, final int lineOffset,
+			final int indentColumn, final boolean inIndent, final StringBuilder replacement,
+			final int idx, final int[] lengths, final String[] replacements) {
+		if (indentColumn < 0) {
+			return;
+		}
+		final int length;
+		try {
+			length= (inIndent) ?
+					this.editStrategy.computeEditInIndent(snapshot, lineOffset, indentColumn, replacement) :
+					this.editStrategy.computeChangeIndent(snapshot, lineOffset, indentColumn, replacement);
+		}
+		catch (final BadLocationException e) {
+			throw new IllegalStateException(e); // snapshot
+		}
+		if (length >= 0 && !snapshot.regionMatches(lineOffset, length, replacement)) {
+			lengths[idx]= length;
+			replacements[idx]= replacement.toString();
+		}
 	}
 	
 	
@@ -631,26 +854,13 @@ public class IndentUtil {
 	 * @throws BadLocationException 
 	 */
 	public final ILineIndent getIndent(final int lineNum) throws BadLocationException {
-		int offset= this.document.getLineOffset(lineNum);
-		int column= 0;
-		final int bound= this.document.getLength();
-		ITER_CHARS : for (; offset < bound; offset++) {
-			final char c= this.document.getChar(offset);
-			switch (c) {
-			case ' ':
-				column++;
-				continue ITER_CHARS;
-			case '\t':
-				column+= this.tabWidth - (column % this.tabWidth);
-				continue ITER_CHARS;
-			case '\r':
-			case '\n':
-				break ITER_CHARS;
-			default:
-				return new LineIndent.NonBlank(0, offset, column);
-			}
+		final LineIndentCache cache= getIndentCache();
+		final int offset= cache.getIndentOffset(this.document, lineNum, this.tabWidth);
+		final int column= cache.getIndentColumn(this.document, lineNum, this.tabWidth);
+		if (cache.isBlank(this.document, lineNum, this.tabWidth)) {
+			return new LineIndent.Blank(0, offset, column);
 		}
-		return new LineIndent.Blank(0, offset, column);
+		return new LineIndent.NonBlank(0, offset, column);
 	}
 	
 	/**
@@ -677,19 +887,7 @@ public class IndentUtil {
 	 * @throws BadLocationException
 	 */
 	public final int getColumn(final int lineNum, final int offset) throws BadLocationException {
-		int checkOffset= this.document.getLineOffset(lineNum);
-		int column= 0;
-		ITER_CHARS : while (checkOffset < offset) {
-			switch (this.document.getChar(checkOffset++)) {
-			case '\t':
-				column+= this.tabWidth - (column % this.tabWidth);
-				continue ITER_CHARS;
-			default:
-				column++;
-				continue ITER_CHARS;
-			}
-		}
-		return column;
+		return getIndentCache().getColumn(this.document, lineNum, offset, this.tabWidth);
 	}
 	
 	/**
@@ -821,6 +1019,13 @@ public class IndentUtil {
 	}
 	
 	
+	private LineIndentCache getIndentCache() {
+		if (this.indentCache == null) {
+			this.indentCache= LineIndentCache.get(this.document);
+		}
+		return this.indentCache;
+	}
+	
 	protected final int getDocumentChar(final int idx) throws BadLocationException {
 		if (idx >= 0 && idx < this.document.getLength()) {
 			return this.document.getChar(idx);
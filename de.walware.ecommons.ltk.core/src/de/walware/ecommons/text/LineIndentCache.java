@@ -0,0 +1,341 @@
+/*=============================================================================#
+ # Copyright (c) 2016 Stephan Wahlbrink (WalWare.de) and others.
+ # All rights reserved. This program and the accompanying materials
+ # are made available under the terms of the Eclipse Public License v1.0
+ # which accompanies this distribution, and is available at
+ # http://www.eclipse.org/legal/epl-v10.html
+ # 
+ # Contributors:
+ #     Stephan Wahlbrink - initial API and implementation
+ #=============================================================================*/
+
+package de.walware.ecommons.text;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+
+
+/**
+ * Cache for the indentation of the lines of a document.
+ * <p>
+ * For each line the cache stores the length and the column of the indentation (leading spaces
+ * and tabs) for a tab width. The cache is shared for a document ({@link #get(IDocument)}); it
+ * listens to the changes of the document and invalidates the entries of the changed lines.
+ * The entries are kept separately for the last four requested tab widths,
+ * so callers using different tab widths for the same document don't invalidate each other.
+ * A tab width &lt;= 0 is handled as tab width 8 like in {@link TextUtil}.</p>
+ * <p>
+ * The methods are thread-safe, but the document must not be changed concurrently.</p>
+ */
+public final class LineIndentCache implements IDocumentListener {
+	
+	
+	private static final Map<IDocument, LineIndentCache> CACHES= new WeakHashMap<>();
+	
+	/**
+	 * Returns the cache for the specified document.
+	 * <p>
+	 * The cache is created if it doesn't yet exists.</p>
+	 * 
+	 * @param document the document
+	 * @return the cache
+	 */
+	public static LineIndentCache get(final IDocument document) {
+		synchronized (CACHES) {
+			LineIndentCache cache= CACHES.get(document);
+			if (cache == null) {
+				cache= new LineIndentCache();
+				document.addPrenotifiedDocumentListener(cache);
+				CACHES.put(document, cache);
+			}
+			return cache;
+		}
+	}
+	
+	
+	private static final long VALID= 0x1L;
+	private static final long BLANK= 0x2L;
+	private static final int COLUMN_SHIFT= 2;
+	private static final int LENGTH_SHIFT= 33;
+	
+	private static final int MAX_TAB_WIDTHS= 4;
+	
+	private static final long[] NO_ENTRIES= new long[0];
+	
+	
+	/** Tab widths of the entries, the most recently used first, 0 if unused */
+	private final int[] tabWidths= new int[MAX_TAB_WIDTHS];
+	
+	/** Entries for each tab width and line, 0 if unknown: indentLength << 33 | indentColumn << 2 | BLANK | VALID */
+	private final long[][] entries= new long[MAX_TAB_WIDTHS][];
+	
+	private int changeFirstLine= -1;
+	private int changeLastLine;
+	private int changeNumberOfLines;
+	
+	/** Column of the last column request inside a line, for incremental computation */
+	private int lastTabWidth;
+	private int lastLine= -1;
+	private int lastOffset;
+	private int lastColumn;
+	
+	
+	private LineIndentCache() {
+		Arrays.fill(this.entries, NO_ENTRIES);
+	}
+	
+	
+	/**
+	 * Returns the document offset of the end of the indentation of the line.
+	 * 
+	 * @param document the document
+	 * @param line the line index
+	 * @param tabWidth the tab width
+	 * @return the offset of the first char of the line which is not a space or tab
+	 * @throws BadLocationException
+	 */
+	public int getIndentOffset(final IDocument document, final int line, int tabWidth)
+			throws BadLocationException {
+		if (tabWidth <= 0) {
+			tabWidth= 8;
+		}
+		final int lineOffset= document.getLineOffset(line);
+		synchronized (this) {
+			return lineOffset + (int) (getEntry(document, line, lineOffset, tabWidth) >>> LENGTH_SHIFT);
+		}
+	}
+	
+	/**
+	 * Returns the column of the end of the indentation of the line.
+	 * 
+	 * @param document the document
+	 * @param line the line index
+	 * @param tabWidth the tab width
+	 * @return the column
+	 * @throws BadLocationException
+	 */
+	public int getIndentColumn(final IDocument document, final int line, int tabWidth)
+			throws BadLocationException {
+		if (tabWidth <= 0) {
+			tabWidth= 8;
+		}
+		final int lineOffset= document.getLineOffset(line);
+		synchronized (this) {
+			return getColumn(getEntry(document, line, lineOffset, tabWidth));
+		}
+	}
+	
+	/**
+	 * Returns if the line is blank (contains only spaces and tabs).
+	 * 
+	 * @param document the document
+	 * @param line the line index
+	 * @param tabWidth the tab width
+	 * @return <code>true</code> if the line is blank, otherwise <code>false</code>
+	 * @throws BadLocationException
+	 */
+	public boolean isBlank(final IDocument document, final int line, int tabWidth)
+			throws BadLocationException {
+		if (tabWidth <= 0) {
+			tabWidth= 8;
+		}
+		final int lineOffset= document.getLineOffset(line);
+		synchronized (this) {
+			return ((getEntry(document, line, lineOffset, tabWidth) & BLANK) != 0);
+		}
+	}
+	
+	/**
+	 * Returns the column of the specified offset.
+	 * <p>
+	 * Linebreaks are not specially handled.</p>
+	 * 
+	 * @param document the document
+	 * @param line the line index
+	 * @param offset the offset in the document (inside the line)
+	 * @param tabWidth the tab width
+	 * @return the column
+	 * @throws BadLocationException
+	 */
+	public int getColumn(final IDocument document, final int line, final int offset,
+			int tabWidth) throws BadLocationException {
+		if (tabWidth <= 0) {
+			tabWidth= 8;
+		}
+		final int lineOffset= document.getLineOffset(line);
+		synchronized (this) {
+			final long entry= getEntry(document, line, lineOffset, tabWidth);
+			int checkOffset= lineOffset + (int) (entry >>> LENGTH_SHIFT);
+			int column= getColumn(entry);
+			if (offset == checkOffset) {
+				return column;
+			}
+			if (offset < checkOffset) {
+				checkOffset= lineOffset;
+				column= 0;
+			}
+			else if (line == this.lastLine && tabWidth == this.lastTabWidth
+					&& offset >= this.lastOffset && this.lastOffset > checkOffset) {
+				checkOffset= this.lastOffset;
+				column= this.lastColumn;
+			}
+			while (checkOffset < offset) {
+				if (document.getChar(checkOffset++) == '\t') {
+					column+= tabWidth - (column % tabWidth);
+				}
+				else {
+					column++;
+				}
+			}
+			this.lastTabWidth= tabWidth;
+			this.lastLine= line;
+			this.lastOffset= offset;
+			this.lastColumn= column;
+			return column;
+		}
+	}
+	
+	
+	private static int getColumn(final long entry) {
+		return (int) ((entry >>> COLUMN_SHIFT) & 0x7fffffffL);
+	}
+	
+	private long getEntry(final IDocument document, final int line, final int lineOffset,
+			final int tabWidth) throws BadLocationException {
+		final int idx= getEntriesIdx(tabWidth);
+		long[] entries= this.entries[idx];
+		if (line < entries.length && entries[line] != 0) {
+			return entries[line];
+		}
+		
+		final int bound= document.getLength();
+		int offset= lineOffset;
+		int column= 0;
+		long blank= BLANK;
+		ITER_CHARS : for (; offset < bound; offset++) {
+			switch (document.getChar(offset)) {
+			case ' ':
+				column++;
+				continue ITER_CHARS;
+			case '\t':
+				column+= tabWidth - (column % tabWidth);
+				continue ITER_CHARS;
+			case '\r':
+			case '\n':
+				break ITER_CHARS;
+			default:
+				blank= 0;
+				break ITER_CHARS;
+			}
+		}
+		final long entry= ((long) (offset - lineOffset) << LENGTH_SHIFT)
+				| ((long) column << COLUMN_SHIFT) | blank | VALID;
+		if (line >= entries.length) {
+			entries= this.entries[idx]= Arrays.copyOf(entries,
+					Math.max(line + 1, Math.max(16, entries.length * 2)) );
+		}
+		entries[line]= entry;
+		return entry;
+	}
+	
+	/**
+	 * Returns the index of the entries for the tab width and moves it to the front.
+	 * If there are no entries for the tab width, the least recently used entries are reused.
+	 */
+	private int getEntriesIdx(final int tabWidth) {
+		if (this.tabWidths[0] == tabWidth) {
+			return 0;
+		}
+		int idx= 1;
+		while (idx < MAX_TAB_WIDTHS - 1 && this.tabWidths[idx] != tabWidth) {
+			idx++;
+		}
+		long[] entries= this.entries[idx];
+		if (this.tabWidths[idx] != tabWidth) {
+			Arrays.fill(entries, 0);
+		}
+		System.arraycopy(this.tabWidths, 0, this.tabWidths, 1, idx);
+		System.arraycopy(this.entries, 0, this.entries, 1, idx);
+		this.tabWidths[0]= tabWidth;
+		this.entries[0]= entries;
+		return 0;
+	}
+	
+	private void clear() {
+		for (int idx= 0; idx < MAX_TAB_WIDTHS; idx++) {
+			Arrays.fill(this.entries[idx], 0);
+		}
+		this.lastLine= -1;
+	}
+	
+	
+	@Override
+	public void documentAboutToBeChanged(final DocumentEvent event) {
+		final IDocument document= event.getDocument();
+		synchronized (this) {
+			try {
+				this.changeFirstLine= document.getLineOfOffset(event.getOffset());
+				this.changeLastLine= document.getLineOfOffset(event.getOffset() + event.getLength());
+				this.changeNumberOfLines= document.getNumberOfLines();
+			}
+			catch (final BadLocationException e) {
+				this.changeFirstLine= -1;
+			}
+		}
+	}
+	
+	@Override
+	public void documentChanged(final DocumentEvent event) {
+		final IDocument document= event.getDocument();
+		synchronized (this) {
+			this.lastLine= -1;
+			final int firstLine= this.changeFirstLine;
+			this.changeFirstLine= -1;
+			if (firstLine < 0) {
+				clear();
+				return;
+			}
+			final int removed= this.changeLastLine - firstLine + 1;
+			final int inserted= removed + (document.getNumberOfLines() - this.changeNumberOfLines);
+			if (inserted < 0) {
+				clear();
+				return;
+			}
+			for (int idx= 0; idx < MAX_TAB_WIDTHS; idx++) {
+				this.entries[idx]= update(this.entries[idx], firstLine, removed, inserted);
+			}
+		}
+	}
+	
+	private static long[] update(final long[] entries,
+			final int firstLine, final int removed, final int inserted) {
+		if (firstLine >= entries.length) {
+			return entries;
+		}
+		final int tailLength= Math.max(entries.length - (firstLine + removed), 0);
+		long[] newEntries= entries;
+		if (inserted != removed) {
+			if (inserted > removed) {
+				newEntries= new long[entries.length + (inserted - removed)];
+				System.arraycopy(entries, 0, newEntries, 0, firstLine);
+			}
+			if (tailLength > 0) {
+				System.arraycopy(entries, firstLine + removed, newEntries, firstLine + inserted, tailLength);
+			}
+			if (newEntries == entries) {
+				Arrays.fill(entries, Math.min(firstLine + inserted + tailLength, entries.length),
+						entries.length, 0 );
+			}
+		}
+		Arrays.fill(newEntries, firstLine,
+				Math.min(firstLine + inserted, newEntries.length), 0 );
+		return newEntries;
+	}
+	
+}
@@ -17,6 +17,12 @@ import de.walware.ecommons.text.core.ILineInformation;
 import de.walware.ecommons.text.core.LineInformation;
 
 
+/**
+ * Creates line information for text.
+ * <p>
+ * An instance reuses its internal buffer and is not thread safe; use one instance per thread
+ * or create a new instance for each call.</p>
+ */
 public class LineInformationCreator {
 	
 	
@@ -28,14 +34,113 @@ public class LineInformationCreator {
 	
 	
 	public ILineInformation create(final String text) {
+		return new LineInformation(createLineOffsets(text), text.length());
+	}
+	
+	/**
+	 * Creates the line information for the text based on the line offsets of the previous
+	 * version of the text and a single change between them.
+	 * <p>
+	 * Only the lines touched by the change are scanned; the offsets of the other lines are
+	 * taken from the previous line offsets.</p>
+	 * 
+	 * @param text the new text
+	 * @param baseLineOffsets the line offsets of the text before the change
+	 * @param changeOffset offset of the change
+	 * @param changeLength length of the replaced text in the previous text
+	 * @param changeTextLength length of the new text in the text
+	 * @return the line information
+	 */
+	public ILineInformation create(final String text, final int[] baseLineOffsets,
+			final int changeOffset, final int changeLength, final int changeTextLength) {
+		return new LineInformation(updateLineOffsets(text, baseLineOffsets,
+						changeOffset, changeLength, changeTextLength ),
+				text.length() );
+	}
+	
+	/**
+	 * Returns the start offsets of all lines in the text.
+	 * 
+	 * @param text the text
+	 * @return new array with the line offsets
+	 */
+	public int[] createLineOffsets(final String text) {
+		final int line= scan(text, 0, text.length(), 0);
+		return Arrays.copyOf(this.buffer, line + 1);
+	}
+	
+	/**
+	 * Returns the start offsets of all lines in the text based on the line offsets of the previous
+	 * version of the text and a single change between them.
+	 * 
+	 * @see #create(String, int[], int, int, int)
+	 * @return new array with the line offsets
+	 */
+	public int[] updateLineOffsets(final String text, final int[] baseLineOffsets,
+			final int changeOffset, final int changeLength, final int changeTextLength) {
+		if (changeOffset < 0 || changeLength < 0 || changeTextLength < 0
+				|| changeOffset + changeTextLength > text.length()) {
+			throw new IllegalArgumentException();
+		}
+		final int delta= changeTextLength - changeLength;
+		
+		// last line starting before the change (a line starting at the change offset can
+		// be affected by a '\r' '\n' sequence)
+		int startLine= Arrays.binarySearch(baseLineOffsets, changeOffset);
+		if (startLine < 0) {
+			startLine= -startLine - 2;
+		}
+		else {
+			startLine--;
+		}
+		if (startLine < 0) {
+			startLine= 0;
+		}
+		
 		int[] lines= this.buffer;
-		int line= 0;
-		lines[0]= 0;
-		for (int offset= 0; offset < text.length(); ) {
+		if (lines.length < startLine + 1) {
+			lines= this.buffer= new int[startLine + 1024];
+		}
+		System.arraycopy(baseLineOffsets, 0, lines, 0, startLine + 1);
+		
+		// line offsets after the changed region plus one char depend only on unchanged text
+		final int scanEnd= Math.min(changeOffset + changeTextLength + 1, text.length());
+		int line= scan(text, baseLineOffsets[startLine], scanEnd, startLine);
+		lines= this.buffer;
+		final int scannedOffset= getScanEndOffset(text, scanEnd);
+		
+		int baseLine= Arrays.binarySearch(baseLineOffsets, scannedOffset - delta);
+		baseLine= (baseLine < 0) ? (-baseLine - 1) : (baseLine + 1);
+		final int remaining= baseLineOffsets.length - baseLine;
+		if (remaining > 0) {
+			if (line + 1 + remaining > lines.length) {
+				lines= this.buffer= Arrays.copyOf(lines, line + 1 + remaining + 1024);
+			}
+			for (int i= 0; i < remaining; i++) {
+				lines[++line]= baseLineOffsets[baseLine + i] + delta;
+			}
+		}
+		return Arrays.copyOf(lines, line + 1);
+	}
+	
+	/**
+	 * Scans the text for line delimiters and writes the line offsets into the buffer.
+	 * 
+	 * @param text the text
+	 * @param startOffset the start offset of the line <code>line</code>
+	 * @param endOffset the offset to stop at (a '\r' '\n' sequence is consumed completely)
+	 * @param line the index of the line starting at <code>startOffset</code>
+	 * @return the index of the last line found
+	 */
+	private int scan(final String text, final int startOffset, final int endOffset, int line) {
+		int[] lines= this.buffer;
+		lines[line]= startOffset;
+		final int length= text.length();
+		for (int offset= startOffset; offset < endOffset; ) {
 			final int c= text.charAt(offset++);
 			switch (c) {
 			case '\r':
-				if (offset < text.length() && text.charAt(offset) == '\n') {
+				if (offset < length && text.charAt(offset) == '\n') {
 					offset++;
 				}
 				break;
@@ -49,7 +154,16 @@ public class LineInformationCreator {
 			}
 			lines[line]= offset;
 		}
-		return new LineInformation(Arrays.copyOf(lines, line + 1), text.length());
+		return line;
+	}
+	
+	private static int getScanEndOffset(final String text, final int endOffset) {
+		// the scan consumes a '\n' following a '\r' at the end
+		if (endOffset > 0 && endOffset < text.length()
+				&& text.charAt(endOffset - 1) == '\r' && text.charAt(endOffset) == '\n') {
+			return endOffset + 1;
+		}
+		return endOffset;
 	}
 	
 }
@@ -15,11 +15,11 @@ import static de.walware.ecommons.text.ITokenScanner.CLOSING_PEER;
 import static de.walware.ecommons.text.ITokenScanner.OPENING_PEER;
 
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.BadPartitioningException;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ITypedRegion;
 import org.eclipse.jface.text.Region;
-import org.eclipse.jface.text.TextUtilities;
 
 import de.walware.ecommons.text.core.IPartitionConstraint;
 import de.walware.ecommons.text.core.sections.IDocContentSections;
@@ -52,6 +52,9 @@ public class PairMatcher implements ICharPairMatcher {
 	protected int fAnchor;
 	protected String fPartition;
 	
+	private boolean fIndexEnabled;
+	private CharPairIndex fIndex;
+	
 	
 	public PairMatcher(final char[][] pairs, final String partitioning,
 			final String[] partitions, final ITokenScanner scanner, final char escapeChar) {
@@ -60,6 +63,7 @@ public class PairMatcher implements ICharPairMatcher {
 		fPartitioning = partitioning;
 		fApplicablePartitions = partitions;
 		fEscapeChar = escapeChar;
+		fIndexEnabled = (scanner.getClass() == BasicHeuristicTokenScanner.class);
 	}
 	
 	/**
@@ -83,6 +87,22 @@ public class PairMatcher implements ICharPairMatcher {
 	}
 	
 	
+	/**
+	 * Sets if a {@link CharPairIndex} is used to find the peers in a document.
+	 * <p>
+	 * The index is enabled by default if the scanner is a {@link BasicHeuristicTokenScanner}
+	 * (and not a subclass). It must be enabled only if the index gives the same results as the
+	 * scanner of the matcher.</p>
+	 * 
+	 * @param enabled <code>true</code> to use the index, otherwise <code>false</code>
+	 */
+	public void setIndexEnabled(final boolean enabled) {
+		fIndexEnabled = enabled;
+		if (!enabled) {
+			disposeIndex();
+		}
+	}
+	
 	/**
 	 * @return Returns the fPairs.
 	 */
@@ -130,6 +150,7 @@ public class PairMatcher implements ICharPairMatcher {
 	@Override
 	public void dispose() {
 		clear();
+		disposeIndex();
 	}
 	
 	@Override
@@ -147,8 +168,11 @@ public class PairMatcher implements ICharPairMatcher {
 		
 		// get the chars preceding and following the start position
 		try {
-			final ITypedRegion thisPartition = TextUtilities.getPartition(document, fPartitioning, fOffset, false);
-			final ITypedRegion prevPartition = (fOffset > 0) ? TextUtilities.getPartition(document, fPartitioning, fOffset-1, false) : null;
+			final PartitionCursor partitions = new PartitionCursor(document, fPartitioning);
+			final ITypedRegion thisPartition = partitions.getPartition(fOffset);
+			final ITypedRegion prevPartition = (fOffset > 0) ?
+					((thisPartition.getOffset() < fOffset) ? thisPartition : partitions.getPartition(fOffset-1)) :
+					null;
 			
 			char thisChar = IGNORE;
 			char prevChar = IGNORE;
@@ -189,23 +213,72 @@ public class PairMatcher implements ICharPairMatcher {
 			
 			if (fBeginPos > -1) {		// closing peer
 				fAnchor = LEFT;
-				fScanner.configure(document, fPartition);
-				fEndPos = fScanner.findClosingPeer(fBeginPos + 1, fPairs[pairIdx], getEscapeChar(fPartition));
+				fEndPos = findClosingPeer(document, pairIdx, fBeginPos + 1);
 				return (fEndPos > -1 && fBeginPos != fEndPos) ? PAIR_FOUND : CLOSING_NOT_FOUND;
 			}
 			else if (fEndPos > -1) {	// opening peer
 				fAnchor = RIGHT;
-				fScanner.configure(document, fPartition);
-				fBeginPos = fScanner.findOpeningPeer(fEndPos - 1, fPairs[pairIdx], getEscapeChar(fPartition));
+				fBeginPos = findOpeningPeer(document, pairIdx, fEndPos - 1);
 				return (fBeginPos > -1 && fBeginPos != fEndPos) ? PAIR_FOUND : OPENING_NOT_FOUND;
 			}
 			
-		} catch (final BadLocationException x) {
+		} catch (final BadLocationException | BadPartitioningException x) {
 		} // ignore
 		
 		return NOTHING_FOUND;
 	}
 	
+	private CharPairIndex getIndex(final IDocument document) {
+		if (!fIndexEnabled) {
+			return null;
+		}
+		if (fIndex != null && fIndex.getDocument() != document) {
+			disposeIndex();
+		}
+		if (fIndex == null) {
+			final char[] escapeChars = new char[fApplicablePartitions.length];
+			for (int i = 0; i < fApplicablePartitions.length; i++) {
+				escapeChars[i] = getEscapeChar(fApplicablePartitions[i]);
+			}
+			fIndex = new CharPairIndex(document, fPartitioning, fPairs, fApplicablePartitions,
+					escapeChars );
+		}
+		return fIndex;
+	}
+	
+	private void disposeIndex() {
+		if (fIndex != null) {
+			fIndex.dispose();
+			fIndex = null;
+		}
+	}
+	
+	private int findClosingPeer(final IDocument document, final int pairIdx, final int start) {
+		final CharPairIndex index = getIndex(document);
+		if (index != null) {
+			final int offset = index.findClosingPeer(fPartition, pairIdx, start);
+			if (offset != CharPairIndex.NOT_AVAILABLE) {
+				return offset;
+			}
+		}
+		// index not available or stale
+		fScanner.configure(document, fPartition);
+		return fScanner.findClosingPeer(start, fPairs[pairIdx], getEscapeChar(fPartition));
+	}
+	
+	private int findOpeningPeer(final IDocument document, final int pairIdx, final int start) {
+		final CharPairIndex index = getIndex(document);
+		if (index != null) {
+			final int offset = index.findOpeningPeer(fPartition, pairIdx, start);
+			if (offset != CharPairIndex.NOT_AVAILABLE) {
+				return offset;
+			}
+		}
+		// index not available or stale
+		fScanner.configure(document, fPartition);
+		return fScanner.findOpeningPeer(start, fPairs[pairIdx], getEscapeChar(fPartition));
+	}
+	
 	private int checkPartition(final String id) {
 		for (int i = 0; i < fApplicablePartitions.length; i++) {
 			if (fApplicablePartitions[i].equals(id)) {
@@ -0,0 +1,292 @@
+/*=============================================================================#
+ # Copyright (c) 2016 Stephan Wahlbrink (WalWare.de) and others.
+ # All rights reserved. This program and the accompanying materials
+ # are made available under the terms of the Eclipse Public License v1.0
+ # which accompanies this distribution, and is available at
+ # http://www.eclipse.org/legal/epl-v10.html
+ # 
+ # Contributors:
+ #     Stephan Wahlbrink - initial API and implementation
+ #=============================================================================*/
+
+package de.walware.ecommons.text;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.BadPartitioningException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension3;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.ITypedRegion;
+
+
+/**
+ * Cursor to walk the partitions of a document partitioning.
+ * <p>
+ * In contrast to repeated calls of {@link IDocument#getPartition(int)}, the cursor loads
+ * the partitions of a range of the document at once and remembers the current partition,
+ * so that moving to an adjacent partition ({@link #next()}, {@link #previous()}) or requesting
+ * the partition at an offset near the current position is answered without further lookup
+ * in the partitioner.</p>
+ * <p>
+ * The partitions are the same as returned by <code>getPartition(partitioning, offset, false)</code>
+ * (zero-length partitions are not included). If the document implements
+ * {@link IDocumentExtension4}, the cursor reloads the partitions automatically if the document
+ * was modified; otherwise {@link #reset()} must be called after a modification.</p>
+ * <p>
+ * An instance is not thread-safe.</p>
+ */
+public class PartitionCursor {
+	
+	
+	/** Length of the document range loaded at once */
+	private static final int CHUNK_LENGTH= 0x2000;
+	
+	/** Number of single partitions loaded before loading chunks */
+	private static final int SINGLE_LOADS= 2;
+	
+	private static final ITypedRegion[] NO_REGIONS= new ITypedRegion[0];
+	
+	
+	private final IDocument document;
+	private final String partitioning;
+	
+	private long stamp;
+	private int documentLength;
+	
+	/** Partitions of the loaded range, sorted by offset */
+	private ITypedRegion[] regions= NO_REGIONS;
+	/** If the first region in {@link #regions} is complete (not clipped) */
+	private boolean firstComplete;
+	/** If the last region in {@link #regions} is complete (not clipped) */
+	private boolean lastComplete;
+	
+	/** Index of the current partition in {@link #regions} */
+	private int currentIdx= -1;
+	/** The current partition */
+	private ITypedRegion current;
+	
+	private int loadCount;
+	
+	
+	/**
+	 * Creates a new cursor for the specified partitioning of the document.
+	 * 
+	 * @param document the document
+	 * @param partitioning the partitioning
+	 */
+	public PartitionCursor(final IDocument document, final String partitioning) {
+		if (document == null) {
+			throw new NullPointerException("document"); //$NON-NLS-1$
+		}
+		this.document= document;
+		this.partitioning= partitioning;
+		this.stamp= getStamp();
+	}
+	
+	
+	public final IDocument getDocument() {
+		return this.document;
+	}
+	
+	public final String getPartitioning() {
+		return this.partitioning;
+	}
+	
+	/**
+	 * Discards the loaded partitions.
+	 */
+	public void reset() {
+		this.regions= NO_REGIONS;
+		this.currentIdx= -1;
+		this.current= null;
+		this.loadCount= 0;
+	}
+	
+	
+	/**
+	 * Returns the current partition of the cursor.
+	 * 
+	 * @return the current partition or <code>null</code>, if the cursor is not yet positioned
+	 */
+	public ITypedRegion getCurrent() {
+		return this.current;
+	}
+	
+	/**
+	 * Moves the cursor to the partition at the specified offset.
+	 * 
+	 * @param offset the offset in the document
+	 * @return the partition at the offset
+	 * @throws BadLocationException if the offset is invalid in the document
+	 * @throws BadPartitioningException if the partitioning is not known by the document
+	 */
+	public ITypedRegion getPartition(final int offset)
+			throws BadLocationException, BadPartitioningException {
+		checkStamp();
+		if (offset >= this.documentLength) {
+			this.currentIdx= -1;
+			this.current= getDocumentPartition(offset);
+			return this.current;
+		}
+		int idx= -1;
+		if (this.currentIdx >= 0) {
+			if (contains(this.currentIdx, offset)) {
+				idx= this.currentIdx;
+			}
+			else if (this.currentIdx + 1 < this.regions.length && contains(this.currentIdx + 1, offset)) {
+				idx= this.currentIdx + 1;
+			}
+			else if (this.currentIdx > 0 && contains(this.currentIdx - 1, offset)) {
+				idx= this.currentIdx - 1;
+			}
+			else {
+				idx= search(offset);
+			}
+		}
+		else if (this.regions.length > 0) {
+			idx= search(offset);
+		}
+		if (idx < 0
+				|| (idx == 0 && !this.firstComplete)
+				|| (idx == this.regions.length - 1 && !this.lastComplete) ) {
+			idx= load(offset, (this.current == null || offset >= this.current.getOffset()));
+		}
+		this.currentIdx= idx;
+		this.current= this.regions[idx];
+		return this.current;
+	}
+	
+	/**
+	 * Moves the cursor to the partition following the current partition.
+	 * 
+	 * @return the next partition or <code>null</code>, if the current partition is the last one
+	 *     or the cursor is not yet positioned
+	 */
+	public ITypedRegion next() throws BadLocationException, BadPartitioningException {
+		if (this.current == null) {
+			return null;
+		}
+		final int end= this.current.getOffset() + this.current.getLength();
+		checkStamp();
+		if (end >= this.documentLength) {
+			return null;
+		}
+		return getPartition(end);
+	}
+	
+	/**
+	 * Moves the cursor to the partition preceding the current partition.
+	 * 
+	 * @return the previous partition or <code>null</code>, if the current partition is the first
+	 *     one or the cursor is not yet positioned
+	 */
+	public ITypedRegion previous() throws BadLocationException, BadPartitioningException {
+		if (this.current == null || this.current.getOffset() <= 0) {
+			return null;
+		}
+		return getPartition(this.current.getOffset() - 1);
+	}
+	
+	
+	private long getStamp() {
+		return (this.document instanceof IDocumentExtension4) ?
+				((IDocumentExtension4) this.document).getModificationStamp() :
+				IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	}
+	
+	private void checkStamp() {
+		final long stamp= getStamp();
+		if (stamp != this.stamp) {
+			this.stamp= stamp;
+			reset();
+		}
+		this.documentLength= this.document.getLength();
+	}
+	
+	private boolean contains(final int idx, final int offset) {
+		final ITypedRegion region= this.regions[idx];
+		final int start= region.getOffset();
+		final int end= start + region.getLength();
+		return (start <= offset && offset < end);
+	}
+	
+	private int search(final int offset) {
+		final ITypedRegion[] regions= this.regions;
+		int low= 0;
+		int high= regions.length - 1;
+		while (low <= high) {
+			final int mid= (low + high) >>> 1;
+			final ITypedRegion region= regions[mid];
+			if (offset < region.getOffset()) {
+				high= mid - 1;
+			}
+			else if (offset >= region.getOffset() + region.getLength()) {
+				low= mid + 1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+	
+	private int load(final int offset, final boolean forward)
+			throws BadLocationException, BadPartitioningException {
+		final ITypedRegion partition= getDocumentPartition(offset);
+		final int start= partition.getOffset();
+		final int end= start + partition.getLength();
+		
+		if (this.loadCount++ < SINGLE_LOADS
+				|| ((forward) ? (end >= this.documentLength) : (start <= 0)) ) {
+			this.regions= new ITypedRegion[] { partition };
+			this.firstComplete= true;
+			this.lastComplete= true;
+			return 0;
+		}
+		
+		if (forward) {
+			final int rangeEnd= Math.min(end + CHUNK_LENGTH, this.documentLength);
+			final ITypedRegion[] following= computePartitioning(end, rangeEnd - end);
+			final ITypedRegion[] regions= new ITypedRegion[following.length + 1];
+			regions[0]= partition;
+			System.arraycopy(following, 0, regions, 1, following.length);
+			this.regions= regions;
+			this.firstComplete= true;
+			this.lastComplete= (rangeEnd == this.documentLength);
+			return 0;
+		}
+		else {
+			final int rangeStart= Math.max(start - CHUNK_LENGTH, 0);
+			final ITypedRegion[] preceding= computePartitioning(rangeStart, start - rangeStart);
+			final ITypedRegion[] regions= new ITypedRegion[preceding.length + 1];
+			System.arraycopy(preceding, 0, regions, 0, preceding.length);
+			regions[preceding.length]= partition;
+			this.regions= regions;
+			this.firstComplete= (rangeStart == 0);
+			this.lastComplete= true;
+			return preceding.length;
+		}
+	}
+	
+	private ITypedRegion getDocumentPartition(final int offset)
+			throws BadLocationException, BadPartitioningException {
+		if (this.document instanceof IDocumentExtension3) {
+			return ((IDocumentExtension3) this.document).getPartition(this.partitioning,
+					offset, false );
+		}
+		return this.document.getPartition(offset);
+	}
+	
+	private ITypedRegion[] computePartitioning(final int offset, final int length)
+			throws BadLocationException, BadPartitioningException {
+		if (length <= 0) {
+			return NO_REGIONS;
+		}
+		if (this.document instanceof IDocumentExtension3) {
+			return ((IDocumentExtension3) this.document).computePartitioning(this.partitioning,
+					offset, length, false );
+		}
+		return this.document.computePartitioning(offset, length);
+	}
+	
+}
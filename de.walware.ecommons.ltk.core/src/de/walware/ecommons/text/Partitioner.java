@@ -11,20 +11,101 @@
 
 package de.walware.ecommons.text;
 
+import java.util.Arrays;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.BadPositionCategoryException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.DocumentRewriteSession;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ISynchronizable;
 import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TypedPosition;
 import org.eclipse.jface.text.TypedRegion;
 import org.eclipse.jface.text.rules.FastPartitioner;
 import org.eclipse.jface.text.rules.IPartitionTokenScanner;
+import org.eclipse.jface.text.rules.IToken;
 
 
 /**
  * Extended {@link FastPartitioner}.
+ * <p>
+ * In the incremental mode ({@link #setIncrementalMode(boolean)}) the document is partitioned
+ * lazily: a query partitions the document only up to the requested offset, the remaining
+ * document is partitioned by a background job if the document is {@link ISynchronizable} with
+ * a lock object. While scanning, the partitioner keeps checkpoints of the scanner state
+ * (offset and content type, at the document start the start partition type of the scanner),
+ * so that a document change is rescanned from the nearest checkpoint before the change until
+ * the partitions are identical to the previous ones.</p>
  */
 public class Partitioner extends FastPartitioner {
 	
 	
+	/** Min distance of the scanner checkpoints */
+	private static final int CHECKPOINT_DISTANCE = 4096;
+	/** Length of the document partitioned at once in background */
+	private static final int CHUNK_LENGTH = 0x10000;
+	
+	private static final int NOT_INITIALIZED = -1;
+	private static final int COMPLETE = Integer.MAX_VALUE;
+	
+	
+	private class PartitioningJob extends Job {
+		
+		
+		public PartitioningJob() {
+			super("Document Partitioning"); //$NON-NLS-1$
+			setSystem(true);
+			setPriority(DECORATE);
+		}
+		
+		
+		@Override
+		protected IStatus run(final IProgressMonitor monitor) {
+			if (monitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+			synchronized (getLockObject()) {
+				if (fDocument == null || fJob != this
+						|| fPartitionedEnd == NOT_INITIALIZED || fPartitionedEnd == COMPLETE) {
+					return Status.OK_STATUS;
+				}
+				partitionTo(fPartitionedEnd + CHUNK_LENGTH);
+				if (fJob == this && fPartitionedEnd != COMPLETE) {
+					// next chunk, releases the lock in between
+					schedule();
+				}
+			}
+			return Status.OK_STATUS;
+		}
+		
+	}
+	
+	
+	private boolean fIncrementalMode;
+	
+	/**
+	 * Offset until which the document is partitioned (incremental mode): all partitions starting
+	 * before and the partition starting at the offset are valid.
+	 */
+	private int fPartitionedEnd = NOT_INITIALIZED;
+	
+	/** Offsets of the checkpoints, the offset of a token (partition) start */
+	private int[] fCheckpointOffsets;
+	/** Content type of the token at the checkpoint, <code>null</code> for the document start */
+	private String[] fCheckpointTypes;
+	private int fCheckpointCount;
+	
+	private Job fJob;
+	
+	
 	public Partitioner(final IPartitionTokenScanner scanner, final String[] legalContentTypes) {
 		super(scanner, legalContentTypes);
 	}
@@ -37,11 +118,372 @@ public class Partitioner extends FastPartitioner {
 		else {
 			throw new UnsupportedOperationException();
 		}
+		if (fIncrementalMode) {
+			synchronized (getLockObject()) {
+				resetIncremental();
+			}
+		}
+	}
+	
+	/**
+	 * Sets the incremental mode.
+	 * <p>
+	 * The mode must be set before the partitioner is connected to a document.</p>
+	 * 
+	 * @param enabled <code>true</code> to enable the incremental mode, otherwise <code>false</code>
+	 */
+	public void setIncrementalMode(final boolean enabled) {
+		if (fDocument != null) {
+			throw new IllegalStateException("connected"); //$NON-NLS-1$
+		}
+		fIncrementalMode = enabled;
+	}
+	
+	public boolean isIncrementalMode() {
+		return fIncrementalMode;
 	}
 	
 	
 	public void resetCache() {
 		clearPositionCache();
+		if (fIncrementalMode) {
+			synchronized (getLockObject()) {
+				resetIncremental();
+			}
+		}
+	}
+	
+	
+	private Object getLockObject() {
+		final IDocument document = fDocument;
+		if (document instanceof ISynchronizable) {
+			final Object lockObject = ((ISynchronizable) document).getLockObject();
+			if (lockObject != null) {
+				return lockObject;
+			}
+		}
+		return this;
+	}
+	
+	private String getPositionCategory() {
+		return getManagingPositionCategories()[0];
+	}
+	
+	@Override
+	public void connect(final IDocument document, final boolean delayInitialization) {
+		fPartitionedEnd = NOT_INITIALIZED;
+		super.connect(document, delayInitialization);
+	}
+	
+	@Override
+	public void disconnect() {
+		if (fIncrementalMode) {
+			synchronized (getLockObject()) {
+				stopJob();
+				fPartitionedEnd = NOT_INITIALIZED;
+				fCheckpointOffsets = null;
+				fCheckpointTypes = null;
+			}
+		}
+		super.disconnect();
+	}
+	
+	@Override
+	protected void initialize() {
+		if (!fIncrementalMode) {
+			super.initialize();
+			return;
+		}
+		// FastPartitioner is not marked as initialized in incremental mode
+		if (fPartitionedEnd != NOT_INITIALIZED) {
+			return;
+		}
+		final String category = getPositionCategory();
+		try {
+			fDocument.removePositionCategory(category);
+		}
+		catch (final BadPositionCategoryException e) {
+		}
+		fDocument.addPositionCategory(category);
+		clearPositionCache();
+		
+		fCheckpointOffsets = new int[16];
+		fCheckpointTypes = new String[16];
+		fCheckpointOffsets[0] = 0;
+		fCheckpointTypes[0] = null;
+		fCheckpointCount = 1;
+		fPartitionedEnd = 0;
+		
+		if (getLockObject() != this) {
+			fJob = new PartitioningJob();
+			fJob.schedule();
+		}
+	}
+	
+	private void resetIncremental() {
+		stopJob();
+		fPartitionedEnd = NOT_INITIALIZED;
+		if (fDocument != null) {
+			initialize();
+		}
+	}
+	
+	private void stopJob() {
+		if (fJob != null) {
+			fJob.cancel();
+			fJob = null;
+		}
+	}
+	
+	/**
+	 * Partitions the document (incremental mode) at least until the specified offset.
+	 */
+	private void partitionTo(final int offset) {
+		checkInitialization();
+		if (offset <= fPartitionedEnd) {
+			return;
+		}
+		try {
+			scan(fCheckpointCount - 1, offset, COMPLETE);
+		}
+		catch (final BadLocationException | BadPositionCategoryException e) {
+			resetIncremental();
+		}
+	}
+	
+	/**
+	 * Scans the document starting at the specified checkpoint.
+	 * 
+	 * @param checkpointIdx index of the checkpoint to start at
+	 * @param limit offset after which the scan can stop
+	 * @param stableFrom offset after which the scan can stop if the partitions are unchanged
+	 * @return the changed region or <code>null</code>
+	 */
+	private IRegion scan(final int checkpointIdx, final int limit, final int stableFrom)
+			throws BadLocationException, BadPositionCategoryException {
+		final IDocument document = fDocument;
+		final String category = getPositionCategory();
+		final int length = document.getLength();
+		final int start = fCheckpointOffsets[checkpointIdx];
+		final String startType = fCheckpointTypes[checkpointIdx];
+		if (startType == null) {
+			fScanner.setRange(document, start, length - start);
+		}
+		else {
+			fScanner.setPartialRange(document, start, length - start, startType, start);
+		}
+		
+		final Position[] oldPositions = document.getPositions(category);
+		int oldIdx = 0;
+		{	int high = oldPositions.length;
+			while (oldIdx < high) {
+				final int mid = (oldIdx + high) >>> 1;
+				if (oldPositions[mid].getOffset() < start) {
+					oldIdx = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+		}
+		
+		int changeStart = Integer.MAX_VALUE;
+		int changeEnd = -1;
+		int[] newCheckpointOffsets = new int[8];
+		String[] newCheckpointTypes = new String[8];
+		int newCheckpointCount = 0;
+		int lastCheckpoint = start;
+		int end = COMPLETE;
+		boolean stable = false;
+		
+		IToken token;
+		while (!(token = fScanner.nextToken()).isEOF()) {
+			final String contentType = getTokenContentType(token);
+			if (!isSupportedContentType(contentType)) {
+				continue;
+			}
+			final int offset = fScanner.getTokenOffset();
+			final int tokenLength = fScanner.getTokenLength();
+			
+			while (oldIdx < oldPositions.length
+					&& (oldPositions[oldIdx].getOffset() < offset || oldPositions[oldIdx].isDeleted()) ) {
+				final Position position = oldPositions[oldIdx++];
+				document.removePosition(category, position);
+				changeStart = Math.min(changeStart, position.getOffset());
+				changeEnd = Math.max(changeEnd, position.getOffset() + position.getLength());
+			}
+			if (oldIdx < oldPositions.length
+					&& oldPositions[oldIdx].getOffset() == offset
+					&& oldPositions[oldIdx].getLength() == tokenLength
+					&& ((TypedPosition) oldPositions[oldIdx]).getType().equals(contentType) ) {
+				if (offset >= stableFrom) {
+					stable = true;
+					end = offset;
+					break;
+				}
+				oldIdx++;
+			}
+			else {
+				document.addPosition(category, new TypedPosition(offset, tokenLength, contentType));
+				changeStart = Math.min(changeStart, offset);
+				changeEnd = Math.max(changeEnd, offset + tokenLength);
+			}
+			
+			if (offset > start
+					&& (offset >= limit || offset - lastCheckpoint >= CHECKPOINT_DISTANCE) ) {
+				if (newCheckpointCount == newCheckpointOffsets.length) {
+					newCheckpointOffsets = Arrays.copyOf(newCheckpointOffsets, newCheckpointCount * 2);
+					newCheckpointTypes = Arrays.copyOf(newCheckpointTypes, newCheckpointCount * 2);
+				}
+				newCheckpointOffsets[newCheckpointCount] = offset;
+				newCheckpointTypes[newCheckpointCount] = contentType;
+				newCheckpointCount++;
+				lastCheckpoint = offset;
+			}
+			if (offset >= limit) {
+				end = offset;
+				break;
+			}
+		}
+		if (!stable) {
+			// remaining old positions are behind the end
+			while (oldIdx < oldPositions.length) {
+				final Position position = oldPositions[oldIdx++];
+				document.removePosition(category, position);
+				changeStart = Math.min(changeStart, position.getOffset());
+				changeEnd = Math.max(changeEnd, position.getOffset() + position.getLength());
+			}
+		}
+		clearPositionCache();
+		
+		// update checkpoints
+		int keepFrom = fCheckpointCount;
+		if (stable) {
+			keepFrom = checkpointIdx + 1;
+			while (keepFrom < fCheckpointCount && fCheckpointOffsets[keepFrom] < end) {
+				keepFrom++;
+			}
+		}
+		final int keepCount = fCheckpointCount - keepFrom;
+		final int count = checkpointIdx + 1 + newCheckpointCount + keepCount;
+		if (count > fCheckpointOffsets.length) {
+			fCheckpointOffsets = Arrays.copyOf(fCheckpointOffsets, count + 16);
+			fCheckpointTypes = Arrays.copyOf(fCheckpointTypes, count + 16);
+		}
+		System.arraycopy(fCheckpointOffsets, keepFrom, fCheckpointOffsets, checkpointIdx + 1 + newCheckpointCount, keepCount);
+		System.arraycopy(fCheckpointTypes, keepFrom, fCheckpointTypes, checkpointIdx + 1 + newCheckpointCount, keepCount);
+		System.arraycopy(newCheckpointOffsets, 0, fCheckpointOffsets, checkpointIdx + 1, newCheckpointCount);
+		System.arraycopy(newCheckpointTypes, 0, fCheckpointTypes, checkpointIdx + 1, newCheckpointCount);
+		for (int i = count; i < fCheckpointCount; i++) {
+			fCheckpointTypes[i] = null;
+		}
+		fCheckpointCount = count;
+		
+		if (!stable) {
+			fPartitionedEnd = end;
+		}
+		
+		return (changeEnd >= 0) ? new Region(changeStart, changeEnd - changeStart) : null;
+	}
+	
+	@Override
+	public IRegion documentChanged2(final DocumentEvent e) {
+		if (!fIncrementalMode) {
+			return super.documentChanged2(e);
+		}
+		synchronized (getLockObject()) {
+			if (fPartitionedEnd == NOT_INITIALIZED) {
+				return null;
+			}
+			if (getActiveRewriteSession() != null) {
+				// reinitialized at the end of the session
+				stopJob();
+				fPartitionedEnd = NOT_INITIALIZED;
+				return null;
+			}
+			fPositionUpdater.update(e);
+			
+			final int offset = e.getOffset();
+			final int oldEnd = offset + e.getLength();
+			final int newEnd = offset + ((e.getText() != null) ? e.getText().length() : 0);
+			final int delta = newEnd - oldEnd;
+			
+			// last checkpoint before the change, checkpoint 0 is always valid
+			int checkpointIdx = fCheckpointCount - 1;
+			while (checkpointIdx > 0 && fCheckpointOffsets[checkpointIdx] >= offset) {
+				checkpointIdx--;
+			}
+			// checkpoints behind the change are reused only if the partitions are stable
+			int shiftIdx = checkpointIdx + 1;
+			while (shiftIdx < fCheckpointCount && fCheckpointOffsets[shiftIdx] < oldEnd) {
+				fCheckpointOffsets[shiftIdx++] = offset;
+			}
+			for (; shiftIdx < fCheckpointCount; shiftIdx++) {
+				fCheckpointOffsets[shiftIdx] += delta;
+			}
+			if (fPartitionedEnd != COMPLETE) {
+				if (fPartitionedEnd >= oldEnd) {
+					fPartitionedEnd += delta;
+				}
+				else if (fPartitionedEnd > offset) {
+					fPartitionedEnd = offset;
+				}
+			}
+			
+			try {
+				return scan(checkpointIdx,
+						(fPartitionedEnd == COMPLETE) ? COMPLETE : Math.max(fPartitionedEnd, newEnd),
+						newEnd );
+			}
+			catch (final BadLocationException | BadPositionCategoryException ex) {
+				resetIncremental();
+				return new Region(0, e.getDocument().getLength());
+			}
+		}
+	}
+	
+	@Override
+	public void stopRewriteSession(final DocumentRewriteSession session) {
+		super.stopRewriteSession(session);
+		if (fIncrementalMode) {
+			synchronized (getLockObject()) {
+				resetIncremental();
+			}
+		}
+	}
+	
+	@Override
+	public String getContentType(final int offset) {
+		if (fIncrementalMode) {
+			synchronized (getLockObject()) {
+				partitionTo(offset + 1);
+				return super.getContentType(offset);
+			}
+		}
+		return super.getContentType(offset);
+	}
+	
+	@Override
+	public ITypedRegion getPartition(final int offset) {
+		if (fIncrementalMode) {
+			synchronized (getLockObject()) {
+				partitionTo(offset + 1);
+				return super.getPartition(offset);
+			}
+		}
+		return super.getPartition(offset);
+	}
+	
+	@Override
+	public ITypedRegion[] computePartitioning(final int offset, final int length,
+			final boolean includeZeroLengthPartitions) {
+		if (fIncrementalMode) {
+			synchronized (getLockObject()) {
+				partitionTo(offset + length + 1);
+				return super.computePartitioning(offset, length, includeZeroLengthPartitions);
+			}
+		}
+		return super.computePartitioning(offset, length, includeZeroLengthPartitions);
 	}
 	
 	@Override
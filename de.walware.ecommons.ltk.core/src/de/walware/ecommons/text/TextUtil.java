@@ -273,8 +273,12 @@ public class TextUtil {
 		if (tabWidth <= 0) {
 			tabWidth = 8;
 		}
+		final IRegion lineInfo = document.getLineInformation(line);
+		if (offset >= lineInfo.getOffset() && offset <= lineInfo.getOffset() + lineInfo.getLength()) {
+			return LineIndentCache.get(document).getColumn(document, line, offset, tabWidth);
+		}
 		int currentColumn = 0;
-		int currentOffset = document.getLineOffset(line);
+		int currentOffset = lineInfo.getOffset();
 		while (currentOffset < offset) {
 			final char c = document.getChar(currentOffset++);
 			switch (c) {
@@ -343,17 +347,18 @@ public class TextUtil {
 			final String partitioning, final IPartitionConstraint contraint,
 			final IRegion region, final boolean extend) throws BadLocationException, BadPartitioningException {
 		final List<IRegion> regions = new ArrayList<>();
+		final PartitionCursor partitions = new PartitionCursor(document, partitioning);
 		
 		final int regionEnd = region.getOffset() + region.getLength();
 		int validBegin = -1;
 		int offset = region.getOffset();
 		
 		if (extend && offset > 0) {
-			final ITypedRegion partition = document.getPartition(partitioning, offset - 1, false);
+			final ITypedRegion partition = partitions.getPartition(offset - 1);
 			if (contraint.matches(partition.getType())) {
 				offset = partition.getOffset();
 				do {
-					final ITypedRegion prevPartition = document.getPartition(partitioning, offset - 1, false);
+					final ITypedRegion prevPartition = partitions.getPartition(offset - 1);
 					if (!contraint.matches(prevPartition.getType())) {
 						break;
 					}
@@ -365,7 +370,7 @@ public class TextUtil {
 		}
 		
 		do {
-			final ITypedRegion partition = document.getPartition(partitioning, offset, false);
+			final ITypedRegion partition = partitions.getPartition(offset);
 			if (validBegin < 0) {
 				if (contraint.matches(partition.getType())) {
 					validBegin = partition.getOffset();
@@ -383,7 +388,7 @@ public class TextUtil {
 		if (validBegin >= 0) {
 			if (extend) {
 				do {
-					final ITypedRegion partition = document.getPartition(partitioning, offset, false);
+					final ITypedRegion partition = partitions.getPartition(offset);
 					if (!contraint.matches(partition.getType())) {
 						break;
 					}
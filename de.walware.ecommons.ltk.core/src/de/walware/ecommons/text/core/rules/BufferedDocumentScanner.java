@@ -20,17 +20,29 @@ import org.eclipse.jface.text.rules.ICharacterScanner;
 /**
  * A buffered document scanner. The buffer always contains a section of a fixed size of the
  * document to be scanned.
+ * <p>
+ * If the document implements {@link IDocumentCharAccess}, the characters are copied directly
+ * into the buffer. When the buffer is refilled, the last characters are kept so that
+ * {@link #unread()} doesn't require to reload the buffer. For documents with the default line
+ * delimiters, the scanner tracks the start of the current line while reading.</p>
  */
 public final class BufferedDocumentScanner implements ICharacterScanner {
 	
+	/** Max number of characters kept in the buffer when refilling it forward. */
+	private static final int KEEP_LENGTH= 16;
+	
 	/** The document being scanned. */
 	private IDocument fDocument;
+	/** The direct access to the characters of the document, if supported. */
+	private IDocumentCharAccess fDocumentCharAccess;
 	/** The offset of the document range to scan. */
 	private int fRangeOffset;
 	/** The length of the document range to scan. */
 	private int fRangeLength;
 	/** The delimiters of the document. */
 	private char[][] fDelimiters;
+	/** If the line delimiters allows to track the line start (exactly \n, \r and \r\n). */
+	private boolean fTrackLineStart;
 	
 	/** The buffer. */
 	private final char[] fBuffer;
@@ -40,6 +52,8 @@ public final class BufferedDocumentScanner implements ICharacterScanner {
 	private int fBufferLength;
 	/** The offset of the scanner within the buffer. */
 	private int fOffset;
+	/** The document offset of the start of the current line, or -1 if unknown. */
+	private int fLineStartOffset;
 	
 	
 	/**
@@ -67,9 +81,43 @@ public final class BufferedDocumentScanner implements ICharacterScanner {
 			fBufferLength= fBuffer.length;
 		}
 		
+		copyChars(fBufferOffset, 0, fBufferLength);
+	}
+	
+	/**
+	 * Refills the buffer with the contents of the document following the current buffer.
+	 * The last characters of the current buffer are kept at the beginning of the buffer.
+	 */
+	private final void updateBufferForward() {
+		final int keep= (fBuffer.length >= 4 * KEEP_LENGTH) ?
+				Math.min(KEEP_LENGTH, fBufferLength) : 0;
+		final int offset= fBufferOffset + fBufferLength;
+		if (keep > 0) {
+			System.arraycopy(fBuffer, fBufferLength - keep, fBuffer, 0, keep);
+		}
+		fBufferOffset= offset - keep;
+		
+		final int length;
+		if (offset + (fBuffer.length - keep) > fRangeOffset + fRangeLength) {
+			length= fRangeLength - (offset - fRangeOffset);
+		} else {
+			length= fBuffer.length - keep;
+		}
+		fBufferLength= keep + length;
+		fOffset= keep;
+		
+		copyChars(offset, keep, length);
+	}
+	
+	private final void copyChars(final int offset, final int bufferOffset, final int length) {
 		try {
-			final String content= fDocument.get(fBufferOffset, fBufferLength);
-			content.getChars(0, fBufferLength, fBuffer, 0);
+			if (fDocumentCharAccess != null) {
+				fDocumentCharAccess.getChars(offset, length, fBuffer, bufferOffset);
+			}
+			else {
+				final String content= fDocument.get(offset, length);
+				content.getChars(0, length, fBuffer, bufferOffset);
+			}
 		} catch (final BadLocationException e) {
 		}
 	}
@@ -83,17 +131,34 @@ public final class BufferedDocumentScanner implements ICharacterScanner {
 	 */
 	public final void setRange(final IDocument document, final int offset, final int length) {
 		fDocument= document;
+		fDocumentCharAccess= (document instanceof IDocumentCharAccess) ?
+				(IDocumentCharAccess) document : null;
 		fRangeOffset= offset;
 		fRangeLength= length;
 		
 		final String[] delimiters= document.getLegalLineDelimiters();
 		fDelimiters= new char[delimiters.length][];
+		int defaultDelimiters= 0;
 		for (int i= 0; i < delimiters.length; i++) {
 			fDelimiters[i]= delimiters[i].toCharArray();
+			if (delimiters[i].equals("\n")) { //$NON-NLS-1$
+				defaultDelimiters|= 0x1;
+			}
+			else if (delimiters[i].equals("\r")) { //$NON-NLS-1$
+				defaultDelimiters|= 0x2;
+			}
+			else if (delimiters[i].equals("\r\n")) { //$NON-NLS-1$
+				defaultDelimiters|= 0x4;
+			}
+			else {
+				defaultDelimiters|= 0x8;
+			}
 		}
+		fTrackLineStart= (defaultDelimiters == 0x7);
 		
 		updateBuffer(offset);
 		fOffset= 0;
+		fLineStartOffset= -1;
 	}
 	
 	@Override
@@ -102,11 +167,25 @@ public final class BufferedDocumentScanner implements ICharacterScanner {
 			if (fBufferOffset + fBufferLength >= fRangeOffset + fRangeLength) {
 				return EOF;
 			} else {
-				updateBuffer(fBufferOffset + fBufferLength);
-				fOffset= 0;
+				updateBufferForward();
 			}
 		}
-		return fBuffer[fOffset++];
+		final char c= fBuffer[fOffset++];
+		if (c == '\n') {
+			fLineStartOffset= fBufferOffset + fOffset;
+		}
+		else if (c == '\r') {
+			if (fOffset < fBufferLength) {
+				if (fBuffer[fOffset] != '\n') {
+					fLineStartOffset= fBufferOffset + fOffset;
+				}
+			}
+			else {
+				// next char not yet available
+				fLineStartOffset= -1;
+			}
+		}
+		return c;
 	}
 	
 	@Override
@@ -114,21 +193,33 @@ public final class BufferedDocumentScanner implements ICharacterScanner {
 		if (fOffset <= 0) {
 			if (fBufferOffset <= fRangeOffset) {
 				// error: BOF
+				return;
 			} else {
-				updateBuffer(fBufferOffset - fBuffer.length);
-				fOffset= fBuffer.length - 1;
+				final int offset= fBufferOffset - 1;
+				final int back= (fBuffer.length >= 4 * KEEP_LENGTH) ?
+						fBuffer.length - 1 - KEEP_LENGTH : fBuffer.length - 1;
+				updateBuffer(Math.max(offset - back, fRangeOffset));
+				fOffset= offset - fBufferOffset;
 			}
 		} else {
 			--fOffset;
 		}
+		final char c= fBuffer[fOffset];
+		if (c == '\n' || c == '\r') {
+			fLineStartOffset= -1;
+		}
 	}
 	
 	@Override
 	public final int getColumn() {
+		final int offset= fBufferOffset + fOffset;
+		if (fTrackLineStart && fLineStartOffset >= 0) {
+			return offset - fLineStartOffset;
+		}
 		try {
-			final int offset= fBufferOffset + fOffset;
 			final int line= fDocument.getLineOfOffset(offset);
 			final int start= fDocument.getLineOffset(line);
+			fLineStartOffset= start;
 			return offset - start;
 		} catch (final BadLocationException e) {
 		}
@@ -0,0 +1,37 @@
+/*=============================================================================#
+ # Copyright (c) 2016 Stephan Wahlbrink (WalWare.de) and others.
+ # All rights reserved. This program and the accompanying materials
+ # are made available under the terms of the Eclipse Public License v1.0
+ # which accompanies this distribution, and is available at
+ # http://www.eclipse.org/legal/epl-v10.html
+ # 
+ # Contributors:
+ #     Stephan Wahlbrink - initial API and implementation
+ #=============================================================================*/
+
+package de.walware.ecommons.text.core.rules;
+
+import org.eclipse.jface.text.BadLocationException;
+
+
+/**
+ * Optional interface for documents providing direct access to the characters of its text
+ * store, without creating a string.
+ * 
+ * @see BufferedDocumentScanner
+ */
+public interface IDocumentCharAccess {
+	
+	
+	/**
+	 * Copies the characters of the specified range of the document into the array.
+	 * 
+	 * @param offset the offset of the range in the document
+	 * @param length the length of the range
+	 * @param dest the destination array
+	 * @param destOffset the offset in the destination array
+	 * @throws BadLocationException if the range is invalid
+	 */
+	void getChars(int offset, int length, char[] dest, int destOffset) throws BadLocationException;
+	
+}
@@ -44,6 +44,7 @@ import org.eclipse.text.edits.TextEdit;
 import org.eclipse.ui.statushandlers.StatusManager;
 import org.eclipse.ui.texteditor.IEditorStatusLine;
 
+import de.walware.ecommons.text.PartitionCursor;
 import de.walware.ecommons.ui.SharedUIResources;
 
 import de.walware.ecommons.ltk.internal.ui.EditingMessages;
@@ -356,12 +357,12 @@ public class ToggleCommentHandler extends AbstractHandler {
 				document.getLineOfOffset(region.getOffset()+region.getLength()-1) :
 				startLine;
 		
+		final PartitionCursor partitions= new PartitionCursor(document,
+				this.editor.getDocumentContentInfo().getPartitioning() );
 		final MultiTextEdit multi= new MultiTextEdit(region.getOffset(), region.getLength());
 		for (int line= startLine; line <= stopLine; line++) {
 			final IRegion lineInfo= document.getLineInformation(line);
-			final String contentType= document.getContentType(
-					this.editor.getDocumentContentInfo().getPartitioning(),
-					lineInfo.getOffset(), false );
+			final String contentType= partitions.getPartition(lineInfo.getOffset()).getType();
 			
 			final String[] prefixes= getPrefixes(contentType);
 			final String text= document.get(lineInfo.getOffset(), lineInfo.getLength());